@@ -0,0 +1,42 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with the GC profiler on, so every result comes with the bytes allocated
+ * per operation ({@code gc.alloc.rate.norm}). Any other JMH option can be given as usual, e.g.
+ * {@code java -jar cw-bench/target/benchmarks.jar Playout -p detectives=5}.
+ */
+public final class BenchmarkMain {
+
+	/**
+	 * Seed of the starting positions the benchmarks play, fixed so results stay comparable
+	 * between runs
+	 */
+	static final int SEED = 42;
+
+	private BenchmarkMain() {}
+
+	public static void main(String[] args)
+			throws RunnerException, CommandLineOptionException, IOException {
+		var command = new CommandLineOptions(args);
+		if (command.shouldHelp() || command.shouldList() || command.shouldListWithParams()
+				|| command.shouldListProfilers() || command.shouldListResultFormats()) {
+			Main.main(args);
+			return;
+		}
+		var options = new OptionsBuilder()
+				.parent(command)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,108 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import uk.ac.bris.cs.scotlandyard.headless.Games;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Building a game state, generating MrX's moves and advancing by each kind of move.
+ * <br>
+ * Game states cache their moves, so the move generation benchmarks build a new state each time;
+ * subtract {@link #build()} to get the generation cost alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateBenchmark {
+
+	// MrX without double or secret tickets
+	private static final ImmutableMap<Ticket, Integer> PLAIN_TICKETS = ImmutableMap.of(
+			Ticket.TAXI, 4, Ticket.BUS, 3, Ticket.UNDERGROUND, 3, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+
+	@Param({"my", "bitboard"}) public String factory;
+	@Param({"1", "3", "5"}) public int detectives;
+
+	private Factory<GameState> gameStateFactory;
+	private GameSetup setup;
+	private Player mrX;
+	private Player plainMrX;
+	private ImmutableList<Player> detectivePlayers;
+
+	private GameState mrXTurn;
+	private GameState detectiveTurn;
+	private Move single;
+	private Move secret;
+	private Move x2;
+	private Move detectiveMove;
+
+	@Setup public void setUp() throws IOException {
+		gameStateFactory = Games.factory(factory);
+		setup = Games.standardSetup();
+		mrX = Games.mrX(BenchmarkMain.SEED);
+		plainMrX = new Player(Piece.MrX.MRX, PLAIN_TICKETS, mrX.location());
+		detectivePlayers = Games.detectives(detectives, BenchmarkMain.SEED);
+		mrXTurn = build();
+		single = find(mrXTurn.getAvailableMoves(), m -> m instanceof SingleMove
+				&& ((SingleMove) m).ticket != Ticket.SECRET);
+		secret = find(mrXTurn.getAvailableMoves(), m -> m instanceof SingleMove
+				&& ((SingleMove) m).ticket == Ticket.SECRET);
+		x2 = find(mrXTurn.getAvailableMoves(), m -> m instanceof DoubleMove);
+		detectiveTurn = mrXTurn.advance(single);
+		detectiveMove = find(detectiveTurn.getAvailableMoves(), m -> true);
+	}
+
+	private static Move find(ImmutableSet<Move> moves, Predicate<Move> predicate) {
+		return moves.stream().filter(predicate).findFirst()
+				.orElseThrow(() -> new IllegalStateException("No such move in " + moves));
+	}
+
+	@Benchmark public GameState build() {
+		return gameStateFactory.build(setup, mrX, detectivePlayers);
+	}
+
+	@Benchmark public ImmutableSet<Move> mrXMoves() {
+		return gameStateFactory.build(setup, mrX, detectivePlayers).getAvailableMoves();
+	}
+
+	@Benchmark public ImmutableSet<Move> mrXMovesWithoutDoubleOrSecret() {
+		return gameStateFactory.build(setup, plainMrX, detectivePlayers).getAvailableMoves();
+	}
+
+	@Benchmark public GameState advanceSingle() { return mrXTurn.advance(single); }
+
+	@Benchmark public GameState advanceSecret() { return mrXTurn.advance(secret); }
+
+	@Benchmark public GameState advanceDouble() { return mrXTurn.advance(x2); }
+
+	@Benchmark public GameState advanceDetective() { return detectiveTurn.advance(detectiveMove); }
+}
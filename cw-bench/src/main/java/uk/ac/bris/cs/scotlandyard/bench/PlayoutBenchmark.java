@@ -0,0 +1,69 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import com.google.common.collect.ImmutableList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.headless.Games;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Whole games on the standard map with every player picking uniformly random moves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayoutBenchmark {
+
+	@Param({"my", "bitboard"}) public String factory;
+	@Param({"1", "3", "5"}) public int detectives;
+
+	private Factory<GameState> gameStateFactory;
+	private GameSetup setup;
+	private Player mrX;
+	private ImmutableList<Player> detectivePlayers;
+	private SplittableRandom random;
+
+	@Setup public void setUp() throws IOException {
+		gameStateFactory = Games.factory(factory);
+		setup = Games.standardSetup();
+		mrX = Games.mrX(BenchmarkMain.SEED);
+		detectivePlayers = Games.detectives(detectives, BenchmarkMain.SEED);
+		random = new SplittableRandom(BenchmarkMain.SEED);
+	}
+
+	/**
+	 * @return the number of moves played, so the game cannot be optimised away
+	 */
+	@Benchmark public int randomPlayout() {
+		GameState state = gameStateFactory.build(setup, mrX, detectivePlayers);
+		int moves = 0;
+		while (state.getWinner().isEmpty()) {
+			ImmutableList<Move> available = state.getAvailableMoves().asList();
+			state = state.advance(available.get(random.nextInt(available.size())));
+			moves++;
+		}
+		return moves;
+	}
+}
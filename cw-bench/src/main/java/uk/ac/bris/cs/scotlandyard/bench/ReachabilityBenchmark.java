@@ -0,0 +1,84 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.headless.Games;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ReachabilityEngine;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * One frontier expansion with {@link ReachabilityEngine} against the same step over the Guava
+ * graph, plus a three move expansion with tight ticket budgets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReachabilityBenchmark {
+
+	// MrX's possible locations, taken as every n-th node
+	@Param({"1", "10", "50"}) public int frontier;
+
+	private ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private ReachabilityEngine engine;
+	private ImmutableSet<Integer> ids;
+	private ImmutableSet<Integer> detectives;
+	private long[] bits;
+	private long[] blocked;
+	private long[] out;
+	private final int[] tickets = {2, 1, 1, 0, 1};
+
+	@Setup public void setUp() throws IOException {
+		GameSetup setup = Games.standardSetup();
+		graph = setup.graph;
+		engine = ReachabilityEngine.of(setup);
+		ImmutableSet.Builder<Integer> builder = ImmutableSet.builder();
+		graph.nodes().stream().sorted().limit(frontier * 4L).filter(id -> id % 4 == 1)
+				.forEach(builder::add);
+		ids = builder.build();
+		detectives = ImmutableSet.of(26, 29, 50, 53, 91);
+		bits = engine.bitsOf(ids);
+		blocked = engine.bitsOf(detectives);
+		out = new long[engine.graph().words()];
+	}
+
+	@Benchmark public long[] expand() {
+		engine.expand(bits, CompiledGraph.mask(Ticket.SECRET), blocked, out);
+		return out;
+	}
+
+	@Benchmark public Set<Integer> expandGuava() {
+		Set<Integer> next = new HashSet<>();
+		for (int id : ids)
+			for (int neighbour : graph.adjacentNodes(id))
+				if (!detectives.contains(neighbour)) next.add(neighbour);
+		return next;
+	}
+
+	@Benchmark public long[] reachableWithBudget() {
+		return engine.reachable(bits, 3, tickets, blocked);
+	}
+}
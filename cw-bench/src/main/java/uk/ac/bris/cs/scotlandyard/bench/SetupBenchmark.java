@@ -0,0 +1,67 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.io.Resources;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.headless.Games;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ImmutableBoard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Reading {@code graph.txt} and snapshotting a board into an {@link ImmutableBoard}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetupBenchmark {
+
+	private String graph;
+
+	/**
+	 * The board to snapshot, only {@link #snapshot(Board)} is parameterised
+	 */
+	@State(Scope.Benchmark)
+	public static class Board {
+		@Param({"my", "bitboard"}) public String factory;
+		@Param({"1", "3", "5"}) public int detectives;
+
+		private GameState state;
+
+		@Setup public void setUp() throws IOException {
+			state = Games.newGame(Games.factory(factory), Games.standardSetup(), detectives,
+					BenchmarkMain.SEED);
+		}
+	}
+
+	@Setup public void setUp() throws IOException {
+		graph = Resources.toString(Resources.getResource("graph.txt"), StandardCharsets.UTF_8);
+	}
+
+	@Benchmark public ImmutableValueGraph<Integer, ImmutableSet<Transport>> readGraph() {
+		return ScotlandYard.readGraph(graph);
+	}
+
+	@Benchmark public ImmutableBoard snapshot(Board board) { return new ImmutableBoard(board.state); }
+}
@@ -0,0 +1,500 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.DetectiveRounds;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveList;
+import uk.ac.bris.cs.scotlandyard.model.MutableSearchState;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.TranspositionTable;
+
+/**
+ * A MrX Ai using iterative-deepening alpha-beta search.
+ * <br>
+ * The search runs on a {@link MutableSearchState} with MrX's true location, assuming the
+ * detectives know it too. MrX's move is one ply and maximises the score; the rest of the detective
+ * round is the next ply and minimises it, taken from {@link DetectiveRounds} so that every order of
+ * the same detective moves is searched once. A round with too many joint moves, as with five
+ * detectives, is searched one detective's move per ply instead until the rest is small enough.
+ * Leaves are scored by the detectives' ticket-aware distances to MrX from a {@link DistanceOracle}
+ * and by MrX's double and secret tickets left, won and lost games by how soon they end.
+ * <br>
+ * MrX's moves are ordered with the {@link TranspositionTable} move first, then by a history table
+ * of earlier cut-offs with double moves last; detective rounds and moves by how close they get to
+ * MrX. Each iteration after the first searches an aspiration window around the previous score and
+ * widens it on a fail. The table is kept between moves and aged with
+ * {@link TranspositionTable#newSearch()}.
+ * <br>
+ * The search is anytime: the best move of the last complete iteration is always kept, and an
+ * unfinished iteration replaces it only with a root move that beat it at the deeper depth. The
+ * search stops a safety margin before the {@link #pickMove} timeout, at the depth limit, or once
+ * the result is a proven win or loss.
+ * <br>
+ * Detectives cannot see MrX, so on a detective's turn this Ai plays a random move.
+ */
+public final class AlphaBetaAi implements Ai {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AlphaBetaAi.class);
+
+	private static final int INFINITY = 1_000_000_000;
+	private static final int WIN = 1_000_000;
+	// scores beyond this are wins or losses a number of plies away
+	private static final int PROVEN = WIN - 1000;
+	private static final int ASPIRATION = 50;
+	// leaf score weights; distances beyond the cap all count the same
+	private static final int NEAREST_WEIGHT = 100;
+	private static final int DISTANCE_CAP = 6;
+	// tickets kept are worth part of a step of distance, so they are not spent early
+	private static final int DOUBLE_WEIGHT = 60;
+	private static final int SECRET_WEIGHT = 10;
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final int SECRET = Ticket.SECRET.ordinal();
+	// how often the clock is read, in nodes minus one
+	private static final int CLOCK_MASK = 1023;
+	// the most joint detective rounds to consider at a node, more are searched one detective at
+	// a time; five detectives on the standard map have tens of thousands
+	private static final long ROUND_LIMIT = 256;
+	private static final int PIECES = ScotlandYard.ALL_PIECES.size();
+	private static final int[] TRAVEL_TICKETS = {
+			Ticket.TAXI.ordinal(), Ticket.BUS.ordinal(), Ticket.UNDERGROUND.ordinal()};
+
+	/**
+	 * Counters of one search
+	 */
+	public static final class Statistics {
+		private final int depth;
+		private final long nodes;
+		private final long nanos;
+		private final int score;
+
+		Statistics(int depth, long nodes, long nanos, int score) {
+			this.depth = depth;
+			this.nodes = nodes;
+			this.nanos = nanos;
+			this.score = score;
+		}
+
+		/**
+		 * @return the depth in plies of the last complete iteration, a ply being a MrX move, a
+		 * detective round or a detective's move in a round too large to take jointly
+		 */
+		public int depth() { return depth; }
+		/**
+		 * @return the number of positions searched, unfinished iteration included
+		 */
+		public long nodes() { return nodes; }
+		/**
+		 * @return the wall clock time of the search in nanoseconds
+		 */
+		public long nanos() { return nanos; }
+		/**
+		 * @return the score of the last complete iteration from MrX's side
+		 */
+		public int score() { return score; }
+		/**
+		 * @return whether the score is a win or loss the search proved
+		 */
+		public boolean proven() { return Math.abs(score) > PROVEN; }
+		/**
+		 * @return positions searched per second of wall clock time
+		 */
+		public double nodesPerSecond() { return nanos == 0 ? 0 : nodes / (nanos / 1e9); }
+		@Override public String toString() {
+			return String.format("depth %d, score %d, %d nodes in %.3fs (%.0f nodes/s)",
+					depth, score, nodes, nanos / 1e9, nodesPerSecond());
+		}
+	}
+
+	private final int tableEntries;
+	private final int maxDepth;
+
+	private TranspositionTable table;
+	private volatile Statistics lastSearch;
+
+	// state of the running search, only touched by the thread in pickMove
+	private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+	private MutableSearchState state;
+	private DistanceOracle oracle;
+	private MoveList[] lists;
+	private DetectiveRounds[] rounds;
+	// round indices of each ply in the low half, searched first to last
+	private long[][] roundOrder;
+	private int[][] orderScores;
+	private int[] history;
+	// the best root move of the last searchRoot, 0 if none is known
+	private long rootMove;
+	private long deadline;
+	private long nodes;
+	private boolean aborted;
+
+	/**
+	 * An Ai with a table of a million entries and no depth limit beyond 64 plies
+	 */
+	public AlphaBetaAi() { this(1 << 20, 64); }
+
+	/**
+	 * @param tableEntries the transposition table size, rounded up to a power of two
+	 * @param maxDepth the deepest iteration in plies, at most 127
+	 */
+	public AlphaBetaAi(int tableEntries, int maxDepth) {
+		if (maxDepth < 1 || maxDepth > 127)
+			throw new IllegalArgumentException("Depth must be within [1, 127]");
+		if (tableEntries < 1) throw new IllegalArgumentException("Need at least one entry");
+		this.tableEntries = tableEntries;
+		this.maxDepth = maxDepth;
+	}
+
+	@Nonnull @Override public String name() { return "AlphaBeta"; }
+
+	@Override public synchronized void onStart() {
+		if (table != null) table.clear();
+	}
+
+	@Override public synchronized void onTerminate() {
+		table = null;
+		state = null;
+	}
+
+	/**
+	 * @return counters of the last search, or null before the first one
+	 */
+	@Nullable public Statistics lastSearch() { return lastSearch; }
+
+	@Nonnull @Override
+	public synchronized Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		ImmutableList<Move> moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		if (!moves.get(0).commencedBy().isMrX())
+			return moves.get(new SplittableRandom().nextInt(moves.size()));
+		if (moves.size() == 1) return moves.get(0);
+
+		long start = System.nanoTime();
+		deadline = Searches.deadline(start, timeoutPair);
+		prepare(board);
+
+		MoveList root = lists[0];
+		root.clear();
+		state.generate(root);
+		long best = root.get(0);
+		int score = 0, depth = 0;
+		for (int d = 1; d <= maxDepth; d++) {
+			int alpha = -INFINITY, beta = INFINITY, delta = ASPIRATION;
+			if (d > 1 && Math.abs(score) < PROVEN) {
+				alpha = score - delta;
+				beta = score + delta;
+			}
+			int result;
+			while (true) {
+				result = searchRoot(d, alpha, beta, best);
+				if (aborted) break;
+				// widen the side that failed, falling back to a full window
+				if (result <= alpha) alpha = Math.max(-INFINITY, alpha - (delta *= 4));
+				else if (result >= beta) beta = Math.min(INFINITY, beta + (delta *= 4));
+				else break;
+				if (delta > WIN) {
+					alpha = -INFINITY;
+					beta = INFINITY;
+				}
+			}
+			if (aborted) {
+				if (rootMove != 0) best = rootMove;
+				break;
+			}
+			best = rootMove;
+			score = result;
+			depth = d;
+			if (Math.abs(score) > PROVEN) break;
+		}
+		lastSearch = new Statistics(depth, nodes, System.nanoTime() - start, score);
+		LOGGER.debug("{}: {}", PackedMove.toString(best), lastSearch);
+		state = null;
+		long chosen = best;
+		return moves.stream().filter(move -> PackedMove.encode(move) == chosen).findFirst()
+				.orElseThrow();
+	}
+
+	private void prepare(Board board) {
+		state = MutableSearchState.of(board);
+		CompiledGraph graph = state.graph();
+		oracle = DistanceOracle.of(graph);
+		if (table == null) table = new TranspositionTable(tableEntries);
+		table.newSearch();
+		// game over ends a branch before the depth runs out, so one list per ply is enough
+		lists = new MoveList[maxDepth + 1];
+		rounds = new DetectiveRounds[maxDepth + 1];
+		roundOrder = new long[maxDepth + 1][];
+		orderScores = new int[maxDepth + 1][];
+		for (int i = 0; i <= maxDepth; i++) {
+			lists[i] = new MoveList();
+			rounds[i] = new DetectiveRounds();
+		}
+		history = new int[PIECES * graph.size()];
+		nodes = 0;
+		aborted = false;
+	}
+
+	// searches the root with the given move first and leaves the best move in rootMove
+	private int searchRoot(int depth, int alpha, int beta, long first) {
+		MoveList list = lists[0];
+		order(list, 0, first);
+		long best = 0;
+		int bestScore = -INFINITY;
+		for (int i = 0; i < list.size(); i++) {
+			long move = pick(list, 0, i);
+			state.make(move);
+			int score = search(depth - 1, Math.max(alpha, bestScore), beta, 1);
+			state.unmake();
+			if (aborted) break;
+			if (score > bestScore) {
+				bestScore = score;
+				best = move;
+				if (score >= beta) break;
+			}
+		}
+		// an unfinished iteration only keeps a move that beat the window
+		if (aborted && bestScore <= alpha) best = 0;
+		rootMove = best;
+		if (!aborted)
+			table.store(state.key(), best, bestScore, depth, bound(bestScore, alpha, beta));
+		return bestScore;
+	}
+
+	// fail-soft minimax with MrX maximising, scores are from MrX's side
+	private int search(int depth, int alpha, int beta, int ply) {
+		if ((++nodes & CLOCK_MASK) == 0 && System.nanoTime() >= deadline) aborted = true;
+		if (aborted) return 0;
+		if (state.isGameOver()) return state.mrXWins() ? WIN - ply : ply - WIN;
+		if (depth == 0) return evaluate();
+
+		long key = state.key();
+		long ttMove = 0;
+		if (table.probe(key, entry)) {
+			ttMove = entry.move;
+			int stored = fromTable(entry.score, ply);
+			if (entry.depth >= depth
+					&& (entry.bound == TranspositionTable.EXACT
+					|| entry.bound == TranspositionTable.LOWER && stored >= beta
+					|| entry.bound == TranspositionTable.UPPER && stored <= alpha)) return stored;
+		}
+		if (!state.isMrXTurn()) {
+			DetectiveRounds joint = rounds[ply];
+			int count = joint.generate(state, ROUND_LIMIT, deadline);
+			if (count == DetectiveRounds.GAVE_UP && System.nanoTime() >= deadline) {
+				aborted = true;
+				return 0;
+			}
+			int score = count == DetectiveRounds.GAVE_UP
+					? searchDetective(depth, alpha, beta, ply, ttMove)
+					: searchRounds(joint, count, depth, alpha, beta, ply);
+			if (!aborted)
+				table.store(key, 0, toTable(score, ply), depth, bound(score, alpha, beta));
+			return score;
+		}
+
+		MoveList list = lists[ply];
+		list.clear();
+		state.generate(list);
+		order(list, ply, ttMove);
+		int a = alpha;
+		int bestScore = -INFINITY;
+		long best = 0;
+		for (int i = 0; i < list.size(); i++) {
+			long move = pick(list, ply, i);
+			state.make(move);
+			int score = search(depth - 1, a, beta, ply + 1);
+			state.unmake();
+			if (aborted) return 0;
+			if (score > bestScore) {
+				bestScore = score;
+				best = move;
+				a = Math.max(a, score);
+				if (a >= beta) {
+					history[historyIndex(move)] += depth * depth;
+					break;
+				}
+			}
+		}
+		table.store(key, best, toTable(bestScore, ply), depth, bound(bestScore, alpha, beta));
+		return bestScore;
+	}
+
+	// the rest of the detective round as one ply, minimising
+	private int searchRounds(DetectiveRounds joint, int count, int depth, int alpha, int beta,
+	                         int ply) {
+		long[] order = orderRounds(joint, count, ply);
+		int b = beta;
+		int bestScore = INFINITY;
+		for (int i = 0; i < count; i++) {
+			// a round is several moves deep, so the clock is read for every one
+			if (System.nanoTime() >= deadline) aborted = true;
+			if (aborted) return 0;
+			int round = (int) order[i];
+			joint.make(state, round);
+			int score = search(depth - 1, alpha, b, ply + 1);
+			joint.unmake(state, round);
+			if (aborted) return 0;
+			if (score < bestScore) {
+				bestScore = score;
+				b = Math.min(b, score);
+				if (alpha >= b) break;
+			}
+		}
+		return bestScore;
+	}
+
+	// one detective's move as a ply, for rounds with too many joint moves, minimising
+	private int searchDetective(int depth, int alpha, int beta, int ply, long ttMove) {
+		MoveList list = lists[ply];
+		list.clear();
+		state.generate(list);
+		order(list, ply, ttMove);
+		int b = beta;
+		int bestScore = INFINITY;
+		for (int i = 0; i < list.size(); i++) {
+			long move = pick(list, ply, i);
+			state.make(move);
+			int score = search(depth - 1, alpha, b, ply + 1);
+			state.unmake();
+			if (aborted) return 0;
+			if (score < bestScore) {
+				bestScore = score;
+				b = Math.min(b, score);
+				if (alpha >= b) {
+					history[historyIndex(move)] += depth * depth;
+					break;
+				}
+			}
+		}
+		return bestScore;
+	}
+
+	private static int bound(int score, int alpha, int beta) {
+		if (score <= alpha) return TranspositionTable.UPPER;
+		if (score >= beta) return TranspositionTable.LOWER;
+		return TranspositionTable.EXACT;
+	}
+
+	// wins are stored as plies from the node rather than from the root
+	private static int toTable(int score, int ply) {
+		if (score > PROVEN) return score + ply;
+		if (score < -PROVEN) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score > PROVEN) return score - ply;
+		if (score < -PROVEN) return score + ply;
+		return score;
+	}
+
+	// higher is searched first
+	private void order(MoveList list, int ply, long first) {
+		int[] scores = scores(ply, list.size());
+		int mrX = state.locationIndex(0);
+		CompiledGraph graph = state.graph();
+		for (int i = 0; i < list.size(); i++) {
+			long move = list.get(i);
+			int score = history[historyIndex(move)];
+			int piece = PackedMove.piece(move);
+			if (move == first) score = Integer.MAX_VALUE;
+			else if (piece == 0) {
+				if (PackedMove.isDouble(move)) score -= WIN;
+			} else {
+				int to = graph.index(PackedMove.destination(move));
+				int distance = oracle.distance(to, mrX, ticketMask(piece));
+				score -= Math.min(distance, DISTANCE_CAP) * WIN;
+			}
+			scores[i] = score;
+		}
+	}
+
+	// sorts the rounds by how close they bring the detectives to MrX, captures first; each is
+	// its score over its index, so one primitive sort orders them
+	private long[] orderRounds(DetectiveRounds joint, int count, int ply) {
+		long[] order = roundOrder[ply];
+		if (order == null || order.length < count)
+			order = roundOrder[ply] = new long[Math.max(64, Integer.highestOneBit(count) << 1)];
+		int mrX = state.locationIndex(0);
+		CompiledGraph graph = state.graph();
+		for (int round = 0; round < count; round++) {
+			long score = 0;
+			for (int i = 0; i < joint.length(round); i++) {
+				long move = joint.move(round, i);
+				int to = graph.index(PackedMove.destination(move));
+				score += Math.min(DISTANCE_CAP,
+						oracle.distance(to, mrX, ticketMask(PackedMove.piece(move))));
+			}
+			order[round] = score << 32 | round;
+		}
+		Arrays.sort(order, 0, count);
+		return order;
+	}
+
+	private int[] scores(int ply, int count) {
+		int[] scores = orderScores[ply];
+		if (scores == null || scores.length < count)
+			scores = orderScores[ply] = new int[Math.max(64, Integer.highestOneBit(count) << 1)];
+		return scores;
+	}
+
+	// selection sort one step at a time, most nodes cut off after a few moves
+	private long pick(MoveList list, int ply, int from) {
+		int[] scores = orderScores[ply];
+		int best = from;
+		for (int i = from + 1; i < list.size(); i++) if (scores[i] > scores[best]) best = i;
+		if (best != from) {
+			list.swap(from, best);
+			int score = scores[from];
+			scores[from] = scores[best];
+			scores[best] = score;
+		}
+		return list.get(from);
+	}
+
+	private int historyIndex(long move) {
+		return PackedMove.piece(move) * state.graph().size()
+				+ state.graph().index(PackedMove.destination(move));
+	}
+
+	private int ticketMask(int piece) {
+		int mask = 0;
+		for (int ticket : TRAVEL_TICKETS)
+			if (state.ticketCount(piece, ticket) > 0) mask |= 1 << ticket;
+		return mask;
+	}
+
+	// MrX wants the nearest detective far away, the others not close either and his double
+	// and secret tickets kept for later
+	private int evaluate() {
+		int mrX = state.locationIndex(0);
+		int nearest = DISTANCE_CAP, total = 0;
+		for (int piece = 1; piece < PIECES; piece++) {
+			if ((state.detectives() & (1 << piece)) == 0) continue;
+			int distance = Math.min(DISTANCE_CAP,
+					oracle.distance(state.locationIndex(piece), mrX, ticketMask(piece)));
+			nearest = Math.min(nearest, distance);
+			total += distance;
+		}
+		return nearest * NEAREST_WEIGHT + total
+				+ state.ticketCount(0, DOUBLE) * DOUBLE_WEIGHT
+				+ state.ticketCount(0, SECRET) * SECRET_WEIGHT;
+	}
+}
@@ -0,0 +1,309 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveList;
+import uk.ac.bris.cs.scotlandyard.model.MrXBelief;
+import uk.ac.bris.cs.scotlandyard.model.MutableSearchState;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+
+/**
+ * A detective Ai using information-set Monte-Carlo tree search.
+ * <br>
+ * Detectives never see MrX, so every iteration first samples his location from a
+ * {@link MrXBelief} kept up to date with his travel log, reveal rounds included, and plays the
+ * iteration in that determinization. The tree is shared by all determinizations: detective nodes
+ * branch on the detectives' moves, which do not depend on where MrX is, and MrX nodes are chance
+ * nodes that branch on what the detectives would see of his move, the tickets and any revealed
+ * location. MrX's moves inside the tree and both sides in rollouts are played at random on a
+ * {@link MutableSearchState}, which is made and unmade in place.
+ * <br>
+ * The detectives still to move in a round are consecutive levels of the tree and the value of
+ * their moves is backed up jointly, so a search plans the whole round. The first detective plays
+ * the best move; each following detective continues the search from the node the plan reached,
+ * provided the board shows the planned moves were played. The search runs on several worker
+ * threads with virtual loss, like {@link MonteCarloAi}, and stops a safety margin before the
+ * {@link #pickMove} timeout.
+ * <br>
+ * On MrX's turn this Ai plays a random move.
+ */
+public final class InformationSetAi implements Ai {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InformationSetAi.class);
+
+	private static final byte UNVISITED = 0, DETECTIVES = 1, MRX = 2;
+
+	private static final class Node {
+		private static final AtomicIntegerFieldUpdater<Node> VISITS =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+		private static final AtomicIntegerFieldUpdater<Node> DETECTIVE_WINS =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "detectiveWins");
+		private static final AtomicIntegerFieldUpdater<Node> VIRTUAL =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "virtual");
+		private static final AtomicReferenceFieldUpdater<Node, Node[]> CHILDREN =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Node[].class, "children");
+
+		// cleared when the node becomes the root of a later search
+		Node parent;
+		// the detective move leading here, 0 below MrX nodes
+		final long move;
+		volatile byte kind;
+		volatile int visits;
+		volatile int detectiveWins;
+		volatile int virtual;
+		// children of a detective node, one per move
+		volatile Node[] children;
+		// children of a MrX node, by observation
+		final ConcurrentHashMap<Long, Node> observations = new ConcurrentHashMap<>();
+
+		Node(@Nullable Node parent, long move) {
+			this.parent = parent;
+			this.move = move;
+		}
+	}
+
+	private final int threads;
+	private final double exploration;
+	private final long maxIterations;
+
+	private volatile ExecutorService workers;
+	private volatile MrXBelief belief;
+	// the node the last search's plan reached, reused by the next detective in the same round
+	private volatile Node planned;
+	private volatile MonteCarloAi.Statistics lastSearch;
+
+	/**
+	 * An Ai searching on every core
+	 */
+	public InformationSetAi() {
+		this(Runtime.getRuntime().availableProcessors(), Math.sqrt(2), 0);
+	}
+
+	/**
+	 * @param threads how many worker threads
+	 * @param exploration the UCT exploration constant
+	 * @param maxIterations stop after this many iterations even if time is left; 0 for no limit
+	 */
+	public InformationSetAi(int threads, double exploration, long maxIterations) {
+		if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+		this.threads = threads;
+		this.exploration = exploration;
+		this.maxIterations = maxIterations;
+	}
+
+	@Nonnull @Override public String name() { return "ISMCTS"; }
+
+	@Override public void onStart() {
+		belief = null;
+		planned = null;
+	}
+
+	@Override public void onTerminate() {
+		onStart();
+		ExecutorService pool = workers;
+		workers = null;
+		if (pool != null) pool.shutdownNow();
+	}
+
+	/**
+	 * @return counters of the last search, or null before the first one
+	 */
+	@Nullable public MonteCarloAi.Statistics lastSearch() { return lastSearch; }
+
+	/**
+	 * @return the belief about MrX's location the last search sampled from, or null before the
+	 * first one
+	 */
+	@Nullable public MrXBelief belief() { return belief; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		ImmutableList<Move> moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		if (moves.get(0).commencedBy().isMrX())
+			return moves.get(new SplittableRandom().nextInt(moves.size()));
+		if (moves.size() == 1) return moves.get(0);
+
+		long start = System.nanoTime();
+		long deadline = Searches.deadline(start, timeoutPair);
+		MrXBelief current = updateBelief(board);
+
+		// one determinization per possible MrX location, copied by each worker
+		CompiledGraph graph = current.graph();
+		MutableSearchState[] templates = new MutableSearchState[graph.size()];
+		for (int i = 0; i < templates.length; i++)
+			if (current.probability(i) > 0) templates[i] = MutableSearchState.of(board, graph.id(i));
+
+		MoveList available = new MoveList();
+		PackedMove.generate(board, available);
+		Node root = reusableRoot(available);
+		if (root == null) root = new Node(null, 0);
+		int reused = root.visits;
+		if (root.children == null) expand(root, available);
+
+		ExecutorService pool = workers;
+		if (pool == null) {
+			pool = Searches.newWorkers(threads, "ismcts-worker");
+			workers = pool;
+		}
+		SplittableRandom seeds = new SplittableRandom();
+		Node searchRoot = root;
+		long iterations = Searches.run(pool, threads, deadline, maxIterations, worker -> {
+			SplittableRandom random = seeds.split();
+			MutableSearchState[] states = new MutableSearchState[templates.length];
+			MoveList list = new MoveList();
+			return () -> {
+				int location = current.sample(random);
+				MutableSearchState state = states[location];
+				if (state == null) state = states[location] = templates[location].copy();
+				iterate(searchRoot, state, list, random);
+			};
+		});
+
+		Node best = null;
+		for (Node child : root.children)
+			if (best == null || child.visits > best.visits) best = child;
+		planned = best;
+		lastSearch = new MonteCarloAi.Statistics(iterations, iterations,
+				System.nanoTime() - start, reused);
+		LOGGER.debug("{}: {}", PackedMove.toString(best.move), lastSearch);
+		long chosen = best.move;
+		return moves.stream().filter(move -> PackedMove.encode(move) == chosen).findFirst()
+				.orElseThrow();
+	}
+
+	private MrXBelief updateBelief(Board board) {
+		MrXBelief current = belief;
+		if (current == null || current.graph() != CompiledGraph.of(board.getSetup())) {
+			current = new MrXBelief(board.getSetup());
+			planned = null;
+		}
+		current.update(board);
+		if (current.isEmpty()) {
+			// MrX did not start on a standard location; anywhere he could have started will do
+			current = new MrXBelief(board.getSetup(), board.getSetup().graph.nodes(),
+					MrXBelief.Behaviour.routes());
+			current.update(board);
+		}
+		belief = current;
+		return current;
+	}
+
+	// continues the last plan if the board shows its move was played and the same detectives
+	// are still to move
+	@Nullable private Node reusableRoot(MoveList available) {
+		Node node = planned;
+		planned = null;
+		if (node == null || node.kind != DETECTIVES) return null;
+		Node[] children = node.children;
+		if (children == null || children.length != available.size()) return null;
+		for (Node child : children) if (!available.contains(child.move)) return null;
+		node.parent = null;
+		return node;
+	}
+
+	private static void expand(Node node, MoveList moves) {
+		Node[] children = new Node[moves.size()];
+		for (int i = 0; i < children.length; i++) children[i] = new Node(node, moves.get(i));
+		Node.CHILDREN.compareAndSet(node, null, children);
+	}
+
+	private void iterate(Node root, MutableSearchState state, MoveList list,
+	                     SplittableRandom random) {
+		Node node = root;
+		int reward;
+		while (true) {
+			Node.VIRTUAL.incrementAndGet(node);
+			if (state.isGameOver()) {
+				reward = state.detectivesWin() ? 1 : 0;
+				break;
+			}
+			if (node.kind == UNVISITED) node.kind = state.isMrXTurn() ? MRX : DETECTIVES;
+			if (node.visits == 0 && node != root) {
+				reward = rollout(state, list, random);
+				break;
+			}
+			if (state.isMrXTurn()) {
+				long move = randomMove(state, list, random);
+				long observation = observation(state, move);
+				state.make(move);
+				Node parent = node;
+				node = node.observations.computeIfAbsent(observation, key -> new Node(parent, 0));
+			} else {
+				Node[] children = node.children;
+				if (children == null) {
+					list.clear();
+					state.generate(list);
+					expand(node, list);
+					children = node.children;
+				}
+				node = select(node, children);
+				state.make(node.move);
+			}
+		}
+		for (Node n = node; ; n = n.parent) {
+			Node.VISITS.incrementAndGet(n);
+			if (reward != 0) Node.DETECTIVE_WINS.incrementAndGet(n);
+			Node.VIRTUAL.decrementAndGet(n);
+			if (n == root) break;
+		}
+		while (state.ply() > 0) state.unmake();
+	}
+
+	private Node select(Node node, Node[] children) {
+		double logParent = Math.log(Math.max(1, node.visits + node.virtual));
+		Node best = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (Node child : children) {
+			int n = child.visits + child.virtual;
+			if (n == 0) return child;
+			double score = (double) child.detectiveWins / n + exploration * Math.sqrt(logParent / n);
+			if (score > bestScore) {
+				bestScore = score;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	// what the detectives see of a MrX move: the tickets, any revealed location and whether it
+	// was a double move
+	private static long observation(MutableSearchState state, long move) {
+		int round = state.round();
+		long first = PackedMove.ticket1Ordinal(move)
+				| (state.isRevealRound(round) ? PackedMove.destination1(move) + 1L : 0) << 3;
+		if (!PackedMove.isDouble(move)) return first;
+		long second = PackedMove.ticket2Ordinal(move)
+				| (state.isRevealRound(round + 1) ? PackedMove.destination(move) + 1L : 0) << 3;
+		return first | second << 20 | 1L << 40;
+	}
+
+	private static long randomMove(MutableSearchState state, MoveList list,
+	                               SplittableRandom random) {
+		list.clear();
+		int count = state.generate(list);
+		return list.get(random.nextInt(count));
+	}
+
+	private static int rollout(MutableSearchState state, MoveList list, SplittableRandom random) {
+		while (!state.isGameOver()) state.make(randomMove(state, list, random));
+		return state.detectivesWin() ? 1 : 0;
+	}
+}
@@ -0,0 +1,392 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.headless.PlayoutEngine.Policy;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A MrX Ai using Monte-Carlo tree search with UCT.
+ * <br>
+ * The board is rebuilt into a {@link GameState} from what MrX can see, with the rounds already
+ * played cut from the setup. Every worker thread then repeatedly walks the shared tree by UCT,
+ * expands one node and plays a rollout to the end of the game with {@link GameState#advance}
+ * and a {@link Policy}. Visit and win counters are updated with field updaters rather than
+ * locks; a worker adds a virtual loss to every node it passes, so that concurrent workers spread
+ * over different branches. The search stops a safety margin before the timeout of
+ * {@link #pickMove} and plays the most visited move.
+ * <br>
+ * After a move the chosen subtree is kept, and the next search starts from the node matching the
+ * detectives' replies if the tree reached it. {@link #onStart()} and {@link #onTerminate()} drop
+ * the tree; the latter also stops the worker threads. {@link #lastSearch()} reports iterations
+ * and nodes per second of the last search.
+ * <br>
+ * Detectives cannot see MrX, which a perfect information tree would have to cheat around, so on
+ * a detective's turn this Ai plays the rollout policy's move instead.
+ */
+public final class MonteCarloAi implements Ai {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MonteCarloAi.class);
+
+	/**
+	 * Counters of one search
+	 */
+	public static final class Statistics {
+		private final long iterations;
+		private final long nodes;
+		private final long nanos;
+		private final int reused;
+
+		Statistics(long iterations, long nodes, long nanos, int reused) {
+			this.iterations = iterations;
+			this.nodes = nodes;
+			this.nanos = nanos;
+			this.reused = reused;
+		}
+
+		/**
+		 * @return the number of rollouts played
+		 */
+		public long iterations() { return iterations; }
+		/**
+		 * @return the number of tree nodes created
+		 */
+		public long nodes() { return nodes; }
+		/**
+		 * @return the wall clock time of the search in nanoseconds
+		 */
+		public long nanos() { return nanos; }
+		/**
+		 * @return the visits the root already had from earlier searches
+		 */
+		public int reused() { return reused; }
+		/**
+		 * @return rollouts per second of wall clock time
+		 */
+		public double iterationsPerSecond() { return nanos == 0 ? 0 : iterations / (nanos / 1e9); }
+		/**
+		 * @return tree nodes created per second of wall clock time
+		 */
+		public double nodesPerSecond() { return nanos == 0 ? 0 : nodes / (nanos / 1e9); }
+		@Override public String toString() {
+			return String.format("%d iterations, %d nodes in %.3fs (%.0f iterations/s, "
+							+ "%.0f nodes/s), %d visits reused",
+					iterations, nodes, nanos / 1e9, iterationsPerSecond(), nodesPerSecond(), reused);
+		}
+	}
+
+	private static final class Node {
+		private static final AtomicIntegerFieldUpdater<Node> VISITS =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+		private static final AtomicIntegerFieldUpdater<Node> MRX_WINS =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "mrXWins");
+		private static final AtomicIntegerFieldUpdater<Node> VIRTUAL =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "virtual");
+		private static final AtomicReferenceFieldUpdater<Node, Node[]> CHILDREN =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Node[].class, "children");
+
+		// outcome of the state, written before state is published
+		private static final byte OPEN = 0, MRX_WINS_GAME = 1, DETECTIVES_WIN_GAME = 2;
+
+		// cleared when the node becomes the root of a later search
+		Node parent;
+		final Move move;
+		private volatile GameState state;
+		private byte outcome;
+		volatile int visits;
+		volatile int mrXWins;
+		volatile int virtual;
+		volatile Node[] children;
+
+		Node(@Nullable Node parent, @Nullable Move move, @Nullable GameState state) {
+			this.parent = parent;
+			this.move = move;
+			if (state != null) publish(state);
+		}
+
+		private void publish(GameState state) {
+			var winner = state.getWinner();
+			outcome = winner.isEmpty() ? OPEN
+					: winner.contains(Piece.MrX.MRX) ? MRX_WINS_GAME : DETECTIVES_WIN_GAME;
+			this.state = state;
+		}
+
+		// two workers may both advance, the states are equal so either will do
+		GameState state() {
+			GameState current = state;
+			if (current == null) {
+				current = parent.state().advance(move);
+				publish(current);
+			}
+			return current;
+		}
+
+		boolean mrXToMove() { return children[0].move.commencedBy().isMrX(); }
+	}
+
+	private final Factory<GameState> factory;
+	private final Policy rollout;
+	private final int threads;
+	private final double exploration;
+	private final long maxIterations;
+
+	private volatile ExecutorService workers;
+	// the node after this Ai's last move, its subtree is reused if the detectives' replies are in it
+	private volatile Node previous;
+	private volatile Statistics lastSearch;
+
+	/**
+	 * An Ai searching on every core with random rollouts
+	 */
+	public MonteCarloAi() {
+		this(new BitboardGameStateFactory(), Policy.random(),
+				Runtime.getRuntime().availableProcessors(), Math.sqrt(2), 0);
+	}
+
+	/**
+	 * @param factory the factory the searched states are built with
+	 * @param rollout the policy playing both sides in rollouts
+	 * @param threads how many worker threads
+	 * @param exploration the UCT exploration constant
+	 * @param maxIterations stop after this many rollouts even if time is left; 0 for no limit
+	 */
+	public MonteCarloAi(@Nonnull Factory<GameState> factory, @Nonnull Policy rollout, int threads,
+	                    double exploration, long maxIterations) {
+		if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+		this.factory = Objects.requireNonNull(factory);
+		this.rollout = Objects.requireNonNull(rollout);
+		this.threads = threads;
+		this.exploration = exploration;
+		this.maxIterations = maxIterations;
+	}
+
+	@Nonnull @Override public String name() { return "MCTS"; }
+
+	@Override public void onStart() { previous = null; }
+
+	@Override public void onTerminate() {
+		previous = null;
+		ExecutorService pool = workers;
+		workers = null;
+		if (pool != null) pool.shutdownNow();
+	}
+
+	/**
+	 * @return counters of the last search, or null before the first one
+	 */
+	@Nullable public Statistics lastSearch() { return lastSearch; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		ImmutableList<Move> moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		if (!moves.get(0).commencedBy().isMrX())
+			return rollout.pick(board, moves, new SplittableRandom());
+		if (moves.size() == 1) return moves.get(0);
+
+		long start = System.nanoTime();
+		long deadline = Searches.deadline(start, timeoutPair);
+
+		Node root = reusableRoot(board);
+		if (root == null) root = new Node(null, null, mrXState(factory, board));
+		int reused = root.visits;
+		AtomicLong nodes = new AtomicLong();
+		long iterations = search(root, deadline, nodes);
+
+		Node best = null;
+		for (Node child : root.children)
+			if (best == null || child.visits > best.visits) best = child;
+		previous = best;
+		lastSearch = new Statistics(iterations, nodes.get(), System.nanoTime() - start, reused);
+		LOGGER.debug("{}: {}", best.move, lastSearch);
+		// the tree's moves may come from another factory, return the board's equal instance
+		return moves.get(moves.indexOf(best.move));
+	}
+
+	// returns the number of iterations run
+	private long search(Node root, long deadline, AtomicLong nodes) {
+		// the root is always expanded so there is a move to return
+		if (root.children == null) expand(root, nodes);
+		ExecutorService pool = workers;
+		if (pool == null) {
+			pool = Searches.newWorkers(threads, "mcts-worker");
+			workers = pool;
+		}
+		SplittableRandom seeds = new SplittableRandom();
+		return Searches.run(pool, threads, deadline, maxIterations, worker -> {
+			SplittableRandom random = seeds.split();
+			return () -> iterate(root, random, nodes);
+		});
+	}
+
+	private void iterate(Node root, SplittableRandom random, AtomicLong nodes) {
+		Node node = root;
+		int reward;
+		while (true) {
+			Node.VIRTUAL.incrementAndGet(node);
+			GameState state = node.state();
+			if (node.outcome != Node.OPEN) {
+				reward = node.outcome == Node.MRX_WINS_GAME ? 1 : 0;
+				break;
+			}
+			Node[] children = node.children;
+			if (children == null) {
+				if (node.visits == 0) {
+					reward = rollout(state, random);
+					break;
+				}
+				children = expand(node, nodes);
+			}
+			node = select(node, children);
+		}
+		// back up to this search's root; nodes above it belong to earlier searches
+		for (Node n = node; ; n = n.parent) {
+			Node.VISITS.incrementAndGet(n);
+			if (reward != 0) Node.MRX_WINS.addAndGet(n, reward);
+			Node.VIRTUAL.decrementAndGet(n);
+			if (n == root) break;
+		}
+	}
+
+	private static Node[] expand(Node node, AtomicLong nodes) {
+		ImmutableList<Move> moves = node.state().getAvailableMoves().asList();
+		Node[] children = new Node[moves.size()];
+		for (int i = 0; i < children.length; i++) children[i] = new Node(node, moves.get(i), null);
+		if (Node.CHILDREN.compareAndSet(node, null, children)) {
+			nodes.addAndGet(children.length);
+			return children;
+		}
+		return node.children;
+	}
+
+	private Node select(Node node, Node[] children) {
+		boolean mrX = node.mrXToMove();
+		double logParent = Math.log(Math.max(1, node.visits + node.virtual));
+		Node best = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (Node child : children) {
+			int visits = child.visits;
+			int n = visits + child.virtual;
+			// unvisited children first; virtual losses steer other workers elsewhere
+			if (n == 0) return child;
+			int wins = mrX ? child.mrXWins : visits - child.mrXWins;
+			double score = (double) wins / n + exploration * Math.sqrt(logParent / n);
+			if (score > bestScore) {
+				bestScore = score;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	private int rollout(GameState state, SplittableRandom random) {
+		while (state.getWinner().isEmpty()) {
+			ImmutableList<Move> moves = state.getAvailableMoves().asList();
+			state = state.advance(rollout.pick(state, moves, random));
+		}
+		return state.getWinner().contains(Piece.MrX.MRX) ? 1 : 0;
+	}
+
+	// walks down the last tree by the detectives' replies, which the board shows as new locations
+	@Nullable private Node reusableRoot(Board board) {
+		Node node = previous;
+		previous = null;
+		while (node != null) {
+			GameState state = node.state();
+			if (node.outcome != Node.OPEN) return null;
+			if (state.getAvailableMoves().iterator().next().commencedBy().isMrX()) {
+				if (!samePosition(state, board)) return null;
+				// let the rest of the old tree go
+				node.parent = null;
+				return node;
+			}
+			Node[] children = node.children;
+			if (children == null) return null;
+			Node next = null;
+			for (Node child : children) {
+				Detective detective = (Detective) child.move.commencedBy();
+				Ticket ticket = child.move.tickets().iterator().next();
+				if (board.getDetectiveLocation(detective).orElse(-1) == destination(child.move)
+						&& count(board, detective, ticket) == count(state, detective, ticket) - 1) {
+					next = child;
+					break;
+				}
+			}
+			node = next;
+		}
+		return null;
+	}
+
+	private static int destination(Move move) {
+		return move.accept(new Move.FunctionalVisitor<>(
+				single -> single.destination, doubleMove -> doubleMove.destination2));
+	}
+
+	private static int count(Board board, Piece piece, Ticket ticket) {
+		return board.getPlayerTickets(piece).map(tickets -> tickets.getCount(ticket)).orElse(-1);
+	}
+
+	private static boolean samePosition(GameState state, Board board) {
+		for (Detective detective : Detective.values()) {
+			if (!state.getDetectiveLocation(detective)
+					.equals(board.getDetectiveLocation(detective))) return false;
+		}
+		for (Piece piece : ScotlandYard.ALL_PIECES) {
+			for (Ticket ticket : Ticket.values())
+				if (count(state, piece, ticket) != count(board, piece, ticket)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Rebuilds the board MrX sees on his turn as a game state, with the rounds already played cut
+	 * from the setup.
+	 */
+	static GameState mrXState(Factory<GameState> factory, Board board) {
+		GameSetup setup = board.getSetup();
+		int played = board.getMrXTravelLog().size();
+		GameSetup remaining = new GameSetup(setup.graph,
+				setup.moves.subList(played, setup.moves.size()));
+		int location = board.getAvailableMoves().iterator().next().source();
+		Player mrX = new Player(Piece.MrX.MRX, tickets(board, Piece.MrX.MRX), location);
+		ImmutableList.Builder<Player> detectives = ImmutableList.builder();
+		for (Detective detective : Detective.values()) {
+			board.getDetectiveLocation(detective).ifPresent(at ->
+					detectives.add(new Player(detective, tickets(board, detective), at)));
+		}
+		return factory.build(remaining, mrX, detectives.build());
+	}
+
+	private static ImmutableMap<Ticket, Integer> tickets(Board board, Piece piece) {
+		Board.TicketBoard tickets = board.getPlayerTickets(piece).orElseThrow();
+		ImmutableMap.Builder<Ticket, Integer> builder = ImmutableMap.builder();
+		for (Ticket ticket : Ticket.values()) builder.put(ticket, tickets.getCount(ticket));
+		return builder.build();
+	}
+}
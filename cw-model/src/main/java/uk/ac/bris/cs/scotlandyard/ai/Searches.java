@@ -0,0 +1,93 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import io.atlassian.fugue.Pair;
+
+/**
+ * Time budgets and worker threads shared by the tree search Ais.
+ */
+final class Searches {
+
+	// fraction of the timeout kept back, and at least this many milliseconds
+	private static final double MARGIN = 0.1;
+	private static final long MIN_MARGIN_MILLIS = 50;
+
+	private Searches() {}
+
+	/**
+	 * @param start {@link System#nanoTime()} when the Ai was asked for a move
+	 * @param timeout the timeout given to {@code pickMove}
+	 * @return the {@link System#nanoTime()} to stop searching at, a safety margin before the
+	 * timeout: 10% of it and at least 50ms
+	 */
+	static long deadline(long start, Pair<Long, TimeUnit> timeout) {
+		long budget = timeout.right().toNanos(timeout.left());
+		long margin = Math.max((long) (budget * MARGIN),
+				TimeUnit.MILLISECONDS.toNanos(MIN_MARGIN_MILLIS));
+		return start + Math.max(budget - margin, 0);
+	}
+
+	/**
+	 * @param threads how many threads
+	 * @param name the thread name
+	 * @return a fixed pool of daemon threads, so a forgotten Ai does not keep the JVM alive
+	 */
+	static ExecutorService newWorkers(int threads, String name) {
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Runs iterations on every worker until the deadline, the iteration limit or an interrupt.
+	 * Each worker counts its own iterations and the counts are summed after the join, so the
+	 * workers share no counter.
+	 *
+	 * @param pool the workers
+	 * @param threads how many workers to use
+	 * @param deadline the {@link System#nanoTime()} to stop at
+	 * @param maxIterations the iteration limit over all workers, split evenly between them; 0 for
+	 * none
+	 * @param workers creates the iteration of each worker, called once per worker index
+	 * @return the number of iterations run, never more than the limit
+	 */
+	static long run(ExecutorService pool, int threads, long deadline, long maxIterations,
+	                IntFunction<Runnable> workers) {
+		List<Future<Long>> futures = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			Runnable iteration = workers.apply(i);
+			long share = maxIterations == 0 ? Long.MAX_VALUE
+					: maxIterations / threads + (i < maxIterations % threads ? 1 : 0);
+			futures.add(pool.submit(() -> {
+				long done = 0;
+				while (done < share && System.nanoTime() < deadline
+						&& !Thread.currentThread().isInterrupted()) {
+					iteration.run();
+					done++;
+				}
+				return done;
+			}));
+		}
+		long iterations = 0;
+		try {
+			for (Future<Long> future : futures) iterations += future.get();
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			futures.forEach(future -> future.cancel(true));
+			throw new IllegalStateException("Search failed", e.getCause());
+		}
+		return iterations;
+	}
+}
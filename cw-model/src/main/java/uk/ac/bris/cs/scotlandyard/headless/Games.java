@@ -0,0 +1,80 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Game construction shared by the headless tools and the benchmarks
+ */
+public final class Games {
+
+	private Games() {}
+
+	/**
+	 * @return the standard map with the standard 24 rounds
+	 * @throws IOException if the map cannot be read
+	 */
+	@Nonnull public static GameSetup standardSetup() throws IOException {
+		return new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	/**
+	 * @param factory the factory
+	 * @param setup the setup
+	 * @param detectives how many detectives, 1 to 5
+	 * @param seed the seed for the starting locations, see
+	 * {@link ScotlandYard#generateMrXLocation(int)}
+	 * @return a new game with the default tickets and seeded starting locations
+	 */
+	@Nonnull public static GameState newGame(@Nonnull Factory<GameState> factory,
+	                                         @Nonnull GameSetup setup, int detectives, int seed) {
+		return factory.build(setup, mrX(seed), detectives(detectives, seed));
+	}
+
+	/**
+	 * @param seed the seed for the starting location
+	 * @return MrX with the default tickets at a seeded starting location
+	 */
+	@Nonnull public static Player mrX(int seed) {
+		return new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(seed));
+	}
+
+	/**
+	 * @param count how many detectives, 1 to 5
+	 * @param seed the seed for the starting locations
+	 * @return the first detectives with the default tickets at seeded starting locations
+	 */
+	@Nonnull public static ImmutableList<Player> detectives(int count, int seed) {
+		ImmutableList<Integer> locations = ScotlandYard.generateDetectiveLocations(seed, count);
+		var builder = ImmutableList.<Player>builder();
+		for (int i = 0; i < count; i++)
+			builder.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		return builder.build();
+	}
+
+	/**
+	 * @param name {@code my} or {@code bitboard}
+	 * @return the factory
+	 */
+	@Nonnull public static Factory<GameState> factory(@Nonnull String name) {
+		switch (name) {
+			case "my": return new MyGameStateFactory();
+			case "bitboard": return new BitboardGameStateFactory();
+			default: throw new IllegalArgumentException("Unknown factory " + name);
+		}
+	}
+}
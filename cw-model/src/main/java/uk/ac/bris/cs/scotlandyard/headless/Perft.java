@@ -0,0 +1,135 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+/**
+ * Counts the leaves of the move tree to a fixed depth, like perft in chess engines.
+ * <br>
+ * Every call to {@link GameState#advance(Move)} is one ply, so a MrX move and each detective
+ * move count separately. Games that end before the depth is reached add no leaves. The counts
+ * only depend on the rules, so two factories must agree on them; the time taken measures how
+ * fast {@link GameState#getAvailableMoves()} and {@link GameState#advance(Move)} are.
+ * <br>
+ * {@code Perft <depth> [--divide] [--parallel] [--factory my|bitboard] [--detectives n] [--seed n]}
+ */
+public final class Perft {
+
+	private Perft() {}
+
+	/**
+	 * @param state the root
+	 * @param depth the depth in plies, at least 0
+	 * @return the number of states exactly {@code depth} plies below the root
+	 */
+	public static long count(@Nonnull GameState state, int depth) {
+		if (depth < 0) throw new IllegalArgumentException("Negative depth " + depth);
+		if (depth == 0) return 1;
+		var moves = state.getAvailableMoves();
+		// the leaves below are the moves themselves, no need to advance
+		if (depth == 1) return moves.size();
+		long leaves = 0;
+		for (Move move : moves) leaves += count(state.advance(move), depth - 1);
+		return leaves;
+	}
+
+	/**
+	 * @param state the root
+	 * @param depth the depth in plies, at least 1
+	 * @return the leaf count below each root move, in the order of the available moves
+	 */
+	@Nonnull public static ImmutableMap<Move, Long> divide(@Nonnull GameState state, int depth) {
+		if (depth < 1) throw new IllegalArgumentException("Cannot divide at depth " + depth);
+		var builder = ImmutableMap.<Move, Long>builder();
+		for (Move move : state.getAvailableMoves())
+			builder.put(move, count(state.advance(move), depth - 1));
+		return builder.build();
+	}
+
+	/**
+	 * Same as {@link #divide(GameState, int)}, with each root move counted as a separate task.
+	 *
+	 * @param state the root
+	 * @param depth the depth in plies, at least 1
+	 * @param pool the pool to run on
+	 * @return the leaf count below each root move, in the order of the available moves
+	 */
+	@Nonnull public static ImmutableMap<Move, Long> divide(@Nonnull GameState state, int depth,
+	                                                       @Nonnull ForkJoinPool pool) {
+		if (depth < 1) throw new IllegalArgumentException("Cannot divide at depth " + depth);
+		Objects.requireNonNull(pool);
+		List<Subtree> tasks = new ArrayList<>();
+		for (Move move : state.getAvailableMoves()) {
+			var task = new Subtree(state, move, depth - 1);
+			pool.execute(task);
+			tasks.add(task);
+		}
+		var builder = ImmutableMap.<Move, Long>builder();
+		for (Subtree task : tasks) builder.put(task.move, task.join());
+		return builder.build();
+	}
+
+	private static final class Subtree extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+		private final transient GameState root;
+		private final transient Move move;
+		private final int depth;
+
+		Subtree(GameState root, Move move, int depth) {
+			this.root = root;
+			this.move = move;
+			this.depth = depth;
+		}
+
+		@Override protected Long compute() { return count(root.advance(move), depth); }
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: Perft <depth> [--divide] [--parallel] "
+					+ "[--factory my|bitboard] [--detectives n] [--seed n]");
+			System.exit(2);
+		}
+		int depth = Integer.parseInt(args[0]);
+		boolean divide = false, parallel = false;
+		String factory = "my";
+		int detectives = 5, seed = 0;
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+				case "--divide": divide = true; break;
+				case "--parallel": parallel = true; break;
+				case "--factory": factory = args[++i]; break;
+				case "--detectives": detectives = Integer.parseInt(args[++i]); break;
+				case "--seed": seed = Integer.parseInt(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		GameState root = Games.newGame(Games.factory(factory), Games.standardSetup(),
+				detectives, seed);
+
+		long start = System.nanoTime();
+		long leaves;
+		if (divide || parallel) {
+			Map<Move, Long> counts = parallel
+					? divide(root, depth, ForkJoinPool.commonPool())
+					: divide(root, depth);
+			if (divide) counts.forEach((move, n) -> System.out.println(move + ": " + n));
+			leaves = counts.values().stream().mapToLong(Long::longValue).sum();
+		} else leaves = count(root, depth);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("depth %d: %d leaves in %.3fs (%.0f leaves/s)%n",
+				depth, leaves, seconds, leaves / seconds);
+	}
+}
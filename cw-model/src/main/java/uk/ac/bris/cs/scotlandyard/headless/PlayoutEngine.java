@@ -0,0 +1,217 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Plays whole games without a UI, on as many threads as asked for.
+ * <br>
+ * Game {@code i} of a run starts from the locations seeded with {@code seed + i} (see
+ * {@link ScotlandYard#generateMrXLocation(int)}) and its policies draw from a
+ * {@link SplittableRandom} seeded the same way. Workers take the next game from a shared counter,
+ * so a slow game does not hold up a worker's later ones, and otherwise share nothing but the
+ * factory and the setup and only count locally. A run with the same seed plays the same games on
+ * any number of threads, and throughput grows with the number of cores.
+ * <br>
+ * {@code PlayoutEngine <games> [--factory my|bitboard] [--detectives n] [--threads n] [--seed n]}
+ */
+public final class PlayoutEngine {
+
+	/**
+	 * Picks a move for whoever is to move. Policies are shared between the workers, so they must
+	 * be thread safe; the random source passed in belongs to the game being played.
+	 */
+	@FunctionalInterface
+	public interface Policy {
+		/**
+		 * @param board the board
+		 * @param moves the available moves, never empty
+		 * @param random the game's random source
+		 * @return one of the moves
+		 */
+		@Nonnull Move pick(@Nonnull Board board, @Nonnull ImmutableList<Move> moves,
+		                   @Nonnull SplittableRandom random);
+
+		/**
+		 * @return a policy that picks uniformly at random
+		 */
+		@Nonnull static Policy random() {
+			return (board, moves, random) -> moves.get(random.nextInt(moves.size()));
+		}
+	}
+
+	/**
+	 * The outcome of a run
+	 */
+	public static final class Result {
+		private final int games;
+		private final int mrXWins;
+		private final long plies;
+		private final long nanos;
+
+		Result(int games, int mrXWins, long plies, long nanos) {
+			this.games = games;
+			this.mrXWins = mrXWins;
+			this.plies = plies;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the number of games played
+		 */
+		public int games() { return games; }
+		/**
+		 * @return the number of games MrX won
+		 */
+		public int mrXWins() { return mrXWins; }
+		/**
+		 * @return the number of games the detectives won
+		 */
+		public int detectiveWins() { return games - mrXWins; }
+		/**
+		 * @return the total number of moves played over all games
+		 */
+		public long plies() { return plies; }
+		/**
+		 * @return the wall clock time of the run in nanoseconds
+		 */
+		public long nanos() { return nanos; }
+		/**
+		 * @return the mean number of moves in a game, each detective move counted separately
+		 */
+		public double meanLength() { return games == 0 ? 0 : (double) plies / games; }
+		/**
+		 * @return the fraction of games MrX won
+		 */
+		public double mrXWinRate() { return games == 0 ? 0 : (double) mrXWins / games; }
+		/**
+		 * @return the fraction of games the detectives won
+		 */
+		public double detectiveWinRate() { return games == 0 ? 0 : (double) detectiveWins() / games; }
+		/**
+		 * @return games per second of wall clock time
+		 */
+		public double gamesPerSecond() { return nanos == 0 ? 0 : games / (nanos / 1e9); }
+		@Override public String toString() {
+			return String.format("%d games in %.3fs (%.1f games/s), mean length %.1f, "
+							+ "MrX %.1f%%, detectives %.1f%%",
+					games, nanos / 1e9, gamesPerSecond(), meanLength(),
+					mrXWinRate() * 100, detectiveWinRate() * 100);
+		}
+	}
+
+	private final Factory<GameState> factory;
+	private final GameSetup setup;
+	private final int detectives;
+	private final Policy mrX;
+	private final Policy detective;
+
+	/**
+	 * @param factory the factory to play with
+	 * @param setup the setup
+	 * @param detectives how many detectives, 1 to 5
+	 * @param mrX the policy for MrX
+	 * @param detective the policy for every detective
+	 */
+	public PlayoutEngine(@Nonnull Factory<GameState> factory, @Nonnull GameSetup setup,
+	                     int detectives, @Nonnull Policy mrX, @Nonnull Policy detective) {
+		if (detectives < 1 || detectives > ScotlandYard.DETECTIVES.size())
+			throw new IllegalArgumentException("Cannot play with " + detectives + " detectives");
+		this.factory = Objects.requireNonNull(factory);
+		this.setup = Objects.requireNonNull(setup);
+		this.detectives = detectives;
+		this.mrX = Objects.requireNonNull(mrX);
+		this.detective = Objects.requireNonNull(detective);
+	}
+
+	/**
+	 * @param games how many games to play
+	 * @param seed the seed for starting locations and the games' random sources
+	 * @param threads how many workers
+	 * @return the combined result
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	@Nonnull public Result run(int games, int seed, int threads) throws InterruptedException {
+		if (games < 0) throw new IllegalArgumentException("Negative game count " + games);
+		if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+		AtomicInteger next = new AtomicInteger();
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<long[]>> futures = new ArrayList<>(threads);
+			for (int w = 0; w < threads; w++)
+				futures.add(executor.submit(() -> play(next, games, seed)));
+			int mrXWins = 0;
+			long plies = 0;
+			for (Future<long[]> future : futures) {
+				long[] counts = future.get();
+				mrXWins += (int) counts[0];
+				plies += counts[1];
+			}
+			return new Result(games, mrXWins, plies, System.nanoTime() - start);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A playout failed", e.getCause());
+		} finally { executor.shutdownNow(); }
+	}
+
+	// returns {MrX wins, plies} over the games this worker took
+	private long[] play(AtomicInteger next, int games, int seed) {
+		long mrXWins = 0, plies = 0;
+		for (int game = next.getAndIncrement(); game < games; game = next.getAndIncrement()) {
+			GameState state = Games.newGame(factory, setup, detectives, seed + game);
+			SplittableRandom random = new SplittableRandom(seed + game);
+			while (state.getWinner().isEmpty()) {
+				ImmutableList<Move> moves = state.getAvailableMoves().asList();
+				Policy policy = moves.get(0).commencedBy().isMrX() ? mrX : detective;
+				state = state.advance(policy.pick(state, moves, random));
+				plies++;
+			}
+			if (state.getWinner().contains(Piece.MrX.MRX)) mrXWins++;
+		}
+		return new long[]{mrXWins, plies};
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length == 0) {
+			System.err.println("Usage: PlayoutEngine <games> [--factory my|bitboard] "
+					+ "[--detectives n] [--threads n] [--seed n]");
+			System.exit(2);
+		}
+		int games = Integer.parseInt(args[0]);
+		String factory = "my";
+		int detectives = 5, seed = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+				case "--factory": factory = args[++i]; break;
+				case "--detectives": detectives = Integer.parseInt(args[++i]); break;
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				case "--seed": seed = Integer.parseInt(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		var engine = new PlayoutEngine(Games.factory(factory), Games.standardSetup(), detectives,
+				Policy.random(), Policy.random());
+		System.out.println(engine.run(games, seed, threads));
+	}
+}
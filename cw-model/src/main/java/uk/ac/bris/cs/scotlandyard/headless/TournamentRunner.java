@@ -0,0 +1,440 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.ResourceManager;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Plays every {@link Ai} against every other one without a UI.
+ * <br>
+ * Each ordered pair of entrants plays the same seeded starting positions, once with each side as
+ * MrX. Games run on a fixed pool, with as many at once as the threads allow given the most threads
+ * an entrant searches with, so multi-threaded Ais are not starved of the cores their timeouts
+ * assume. Every game gets fresh Ai instances with {@link Ai#onStart()} and {@link Ai#onTerminate()}
+ * called around it, so Ais never share state between games. Each {@link Ai#pickMove} call runs on
+ * its own thread and is given the move timeout; an Ai that takes longer, throws, or picks a move
+ * that is not available forfeits the game. A pick that timed out is interrupted and waited for,
+ * up to another timeout, before {@link Ai#onTerminate()}; an Ai still searching after that is
+ * abandoned without it. Finished games are appended to the results file as they come in, so an
+ * interrupted run still leaves everything played so far.
+ * <br>
+ * {@code TournamentRunner [--games n] [--factory my|bitboard] [--detectives n] [--timeout ms]
+ * [--threads n] [--ai-threads n] [--seed n] [--results file]}
+ */
+public final class TournamentRunner {
+
+	/**
+	 * Rating every entrant starts with
+	 */
+	public static final double INITIAL_ELO = 1500;
+	private static final double ELO_K = 16;
+
+	/**
+	 * An Ai taking part, created anew for every game
+	 */
+	public static final class Entrant {
+		private final String name;
+		private final Supplier<Ai> ai;
+		private final int threads;
+
+		/**
+		 * @param name the name shown in the tables, unique within a tournament
+		 * @param ai creates a new instance of the Ai, searching on one thread
+		 */
+		public Entrant(@Nonnull String name, @Nonnull Supplier<Ai> ai) { this(name, ai, 1); }
+
+		/**
+		 * @param name the name shown in the tables, unique within a tournament
+		 * @param ai creates a new instance of the Ai
+		 * @param threads how many threads the Ai searches with
+		 */
+		public Entrant(@Nonnull String name, @Nonnull Supplier<Ai> ai, int threads) {
+			if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+			this.name = Objects.requireNonNull(name);
+			this.ai = Objects.requireNonNull(ai);
+			this.threads = threads;
+		}
+
+		/**
+		 * @return the name
+		 */
+		@Nonnull public String name() { return name; }
+		/**
+		 * @return how many threads the Ai searches with
+		 */
+		public int threads() { return threads; }
+		@Override public String toString() { return name; }
+	}
+
+	/**
+	 * The outcome of one game
+	 */
+	public static final class GameResult {
+		private final int index;
+		private final String mrX;
+		private final String detectives;
+		private final int seed;
+		private final boolean mrXWon;
+		private final int plies;
+		private final String forfeit;
+
+		GameResult(int index, String mrX, String detectives, int seed, boolean mrXWon, int plies,
+		           @Nullable String forfeit) {
+			this.index = index;
+			this.mrX = mrX;
+			this.detectives = detectives;
+			this.seed = seed;
+			this.mrXWon = mrXWon;
+			this.plies = plies;
+			this.forfeit = forfeit;
+		}
+
+		/**
+		 * @return the position of the game in the schedule
+		 */
+		public int index() { return index; }
+		/**
+		 * @return the entrant playing MrX
+		 */
+		@Nonnull public String mrX() { return mrX; }
+		/**
+		 * @return the entrant playing the detectives
+		 */
+		@Nonnull public String detectives() { return detectives; }
+		/**
+		 * @return the seed of the starting locations
+		 */
+		public int seed() { return seed; }
+		/**
+		 * @return whether MrX won
+		 */
+		public boolean mrXWon() { return mrXWon; }
+		/**
+		 * @return the winning entrant
+		 */
+		@Nonnull public String winner() { return mrXWon ? mrX : detectives; }
+		/**
+		 * @return the losing entrant
+		 */
+		@Nonnull public String loser() { return mrXWon ? detectives : mrX; }
+		/**
+		 * @return the number of moves played
+		 */
+		public int plies() { return plies; }
+		/**
+		 * @return why the loser forfeited, null if the game was played out
+		 */
+		@Nullable public String forfeit() { return forfeit; }
+
+		String toLine() {
+			return String.join("\t", String.valueOf(index), mrX, detectives, String.valueOf(seed),
+					winner(), String.valueOf(plies), forfeit == null ? "" : forfeit);
+		}
+		@Override public String toString() { return toLine(); }
+	}
+
+	/**
+	 * Win rates and Elo ratings over all games of a tournament
+	 */
+	public static final class Standings {
+		private final ImmutableList<GameResult> games;
+		private final ImmutableMap<String, Double> elo;
+
+		Standings(ImmutableList<GameResult> games, ImmutableMap<String, Double> elo) {
+			this.games = games;
+			this.elo = elo;
+		}
+
+		/**
+		 * @return every game in schedule order
+		 */
+		@Nonnull public ImmutableList<GameResult> games() { return games; }
+		/**
+		 * @return the Elo rating of each entrant, best first
+		 */
+		@Nonnull public ImmutableMap<String, Double> elo() { return elo; }
+		/**
+		 * @param entrant the entrant
+		 * @return the fraction of its games the entrant won, as either side
+		 */
+		public double winRate(@Nonnull String entrant) {
+			int played = 0, won = 0;
+			for (GameResult game : games) {
+				if (!game.mrX.equals(entrant) && !game.detectives.equals(entrant)) continue;
+				played++;
+				if (game.winner().equals(entrant)) won++;
+			}
+			return played == 0 ? 0 : (double) won / played;
+		}
+		/**
+		 * @param entrant the entrant
+		 * @param asMrX true for the games it played as MrX, false for those as the detectives
+		 * @return the fraction of those games the entrant won
+		 */
+		public double winRate(@Nonnull String entrant, boolean asMrX) {
+			int played = 0, won = 0;
+			for (GameResult game : games) {
+				if (!(asMrX ? game.mrX : game.detectives).equals(entrant)) continue;
+				played++;
+				if (game.winner().equals(entrant)) won++;
+			}
+			return played == 0 ? 0 : (double) won / played;
+		}
+		@Override public String toString() {
+			StringBuilder builder = new StringBuilder(String.format("%-24s %8s %8s %8s %8s%n",
+					"Ai", "Elo", "win%", "as MrX", "as det."));
+			elo.forEach((name, rating) -> builder.append(String.format(
+					"%-24s %8.1f %7.1f%% %7.1f%% %7.1f%%%n", name, rating, winRate(name) * 100,
+					winRate(name, true) * 100, winRate(name, false) * 100)));
+			return builder.toString();
+		}
+	}
+
+	private final Factory<GameState> factory;
+	private final GameSetup setup;
+	private final int detectives;
+	private final Duration moveTimeout;
+
+	/**
+	 * @param factory the factory to play with
+	 * @param setup the setup
+	 * @param detectives how many detectives, 1 to 5
+	 * @param moveTimeout how long each {@link Ai#pickMove} call may take
+	 */
+	public TournamentRunner(@Nonnull Factory<GameState> factory, @Nonnull GameSetup setup,
+	                        int detectives, @Nonnull Duration moveTimeout) {
+		if (detectives < 1 || detectives > ScotlandYard.DETECTIVES.size())
+			throw new IllegalArgumentException("Cannot play with " + detectives + " detectives");
+		if (moveTimeout.isNegative() || moveTimeout.isZero())
+			throw new IllegalArgumentException("Move timeout must be positive");
+		this.factory = Objects.requireNonNull(factory);
+		this.setup = Objects.requireNonNull(setup);
+		this.detectives = detectives;
+		this.moveTimeout = moveTimeout;
+	}
+
+	/**
+	 * @param threads how many threads each Ai is taken to search with; the tree search Ais use
+	 * every core by default
+	 * @return an entrant for every Ai found by {@link ResourceManager#scanAis()}
+	 */
+	@Nonnull public static ImmutableList<Entrant> scanEntrants(int threads) {
+		var builder = ImmutableList.<Entrant>builder();
+		for (Ai ai : ResourceManager.scanAis()) {
+			@SuppressWarnings("unchecked") Class<Ai> type = (Class<Ai>) ai.getClass();
+			builder.add(new Entrant(ai.name(), () -> ResourceManager.instantiateAi(type), threads));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param entrants at least two entrants with distinct names
+	 * @param gamesPerPairing the number of starting positions each ordered pair plays
+	 * @param seed the seed of the first starting position, the others follow on
+	 * @param threads how many threads to use; games are played this many over the most threads
+	 * an entrant searches with at once, at least one
+	 * @param results file to append a tab separated line to as each game ends, may be null
+	 * @return the standings
+	 * @throws IOException if the results file cannot be written
+	 * @throws InterruptedException if interrupted while waiting for games
+	 */
+	@Nonnull public Standings run(@Nonnull List<Entrant> entrants, int gamesPerPairing, int seed,
+	                              int threads, @Nullable Path results)
+			throws IOException, InterruptedException {
+		if (entrants.size() < 2) throw new IllegalArgumentException("Need at least two entrants");
+		if (entrants.stream().map(Entrant::name).distinct().count() != entrants.size())
+			throw new IllegalArgumentException("Entrant names must be unique");
+		if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+
+		BufferedWriter writer = results == null ? null : Files.newBufferedWriter(results,
+				StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		int perGame = entrants.stream().mapToInt(Entrant::threads).max().orElseThrow();
+		ExecutorService games = Executors.newFixedThreadPool(Math.max(1, threads / perGame));
+		// pickMove calls block, so they get their own threads and the games just wait on them
+		ExecutorService moves = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "tournament-ai");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<GameResult>> futures = new ArrayList<>();
+			int index = 0;
+			for (Entrant mrX : entrants)
+				for (Entrant detective : entrants) {
+					if (mrX == detective) continue;
+					for (int g = 0; g < gamesPerPairing; g++) {
+						int game = index++;
+						int gameSeed = seed + g;
+						futures.add(games.submit(() -> {
+							GameResult result = play(game, mrX, detective, gameSeed, moves);
+							if (writer != null) append(writer, result);
+							return result;
+						}));
+					}
+				}
+			var played = ImmutableList.<GameResult>builderWithExpectedSize(futures.size());
+			for (Future<GameResult> future : futures) played.add(future.get());
+			ImmutableList<GameResult> all = played.build();
+			return new Standings(all, elo(entrants, all));
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			throw new IllegalStateException("A game failed", e.getCause());
+		} finally {
+			games.shutdownNow();
+			moves.shutdownNow();
+			if (writer != null) writer.close();
+		}
+	}
+
+	private static void append(BufferedWriter writer, GameResult result) {
+		synchronized (writer) {
+			try {
+				writer.write(result.toLine());
+				writer.newLine();
+				writer.flush();
+			} catch (IOException e) { throw new UncheckedIOException(e); }
+		}
+	}
+
+	private GameResult play(int index, Entrant mrXEntrant, Entrant detectiveEntrant, int seed,
+	                        ExecutorService moves) throws InterruptedException {
+		Ai mrX = mrXEntrant.ai.get();
+		Ai detective = detectiveEntrant.ai.get();
+		GameState state = Games.newGame(factory, setup, detectives, seed);
+		int plies = 0;
+		// an Ai whose timed out pick is still running, onTerminate must not pull its state away
+		Ai abandoned = null;
+		mrX.onStart();
+		detective.onStart();
+		try {
+			while (state.getWinner().isEmpty()) {
+				var available = state.getAvailableMoves();
+				boolean mrXTurn = available.iterator().next().commencedBy().isMrX();
+				Ai ai = mrXTurn ? mrX : detective;
+				GameState board = state;
+				CountDownLatch returned = new CountDownLatch(1);
+				Future<Move> pick = moves.submit(() -> {
+					try {
+						return ai.pickMove(board,
+								new Pair<>(moveTimeout.toMillis(), TimeUnit.MILLISECONDS));
+					} finally { returned.countDown(); }
+				});
+				String forfeit = null;
+				Move move = null;
+				try {
+					move = pick.get(moveTimeout.toNanos(), TimeUnit.NANOSECONDS);
+					if (!available.contains(move)) forfeit = "picked unavailable move " + move;
+				} catch (TimeoutException e) {
+					pick.cancel(true);
+					if (!returned.await(moveTimeout.toNanos(), TimeUnit.NANOSECONDS)) abandoned = ai;
+					forfeit = "timed out";
+				} catch (ExecutionException e) {
+					forfeit = "threw " + e.getCause();
+				}
+				if (forfeit != null) {
+					String loser = (mrXTurn ? mrXEntrant : detectiveEntrant).name;
+					return new GameResult(index, mrXEntrant.name, detectiveEntrant.name, seed,
+							!mrXTurn, plies, loser + " " + forfeit);
+				}
+				state = state.advance(move);
+				plies++;
+			}
+			return new GameResult(index, mrXEntrant.name, detectiveEntrant.name, seed,
+					state.getWinner().contains(Piece.MrX.MRX), plies, null);
+		} finally {
+			if (abandoned != mrX) mrX.onTerminate();
+			if (abandoned != detective) detective.onTerminate();
+		}
+	}
+
+	/**
+	 * Rates the entrants by going through the games in schedule order with the usual Elo update.
+	 *
+	 * @param entrants the entrants
+	 * @param games the games in schedule order
+	 * @return the rating of each entrant, best first
+	 */
+	@Nonnull static ImmutableMap<String, Double> elo(@Nonnull List<Entrant> entrants,
+	                                                 @Nonnull List<GameResult> games) {
+		Map<String, Double> ratings = new HashMap<>();
+		for (Entrant entrant : entrants) ratings.put(entrant.name, INITIAL_ELO);
+		for (GameResult game : games) {
+			double winner = ratings.get(game.winner());
+			double loser = ratings.get(game.loser());
+			double expected = 1 / (1 + Math.pow(10, (loser - winner) / 400));
+			double delta = ELO_K * (1 - expected);
+			ratings.put(game.winner(), winner + delta);
+			ratings.put(game.loser(), loser - delta);
+		}
+		Map<String, Double> sorted = new LinkedHashMap<>();
+		ratings.entrySet().stream()
+				.sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+				.forEach(e -> sorted.put(e.getKey(), e.getValue()));
+		return ImmutableMap.copyOf(sorted);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int games = 10, detectives = 5, seed = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int aiThreads = threads;
+		long timeout = 15_000;
+		String factory = "my";
+		Path results = Paths.get("tournament.tsv");
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--games": games = Integer.parseInt(args[++i]); break;
+				case "--factory": factory = args[++i]; break;
+				case "--detectives": detectives = Integer.parseInt(args[++i]); break;
+				case "--timeout": timeout = Long.parseLong(args[++i]); break;
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				case "--ai-threads": aiThreads = Integer.parseInt(args[++i]); break;
+				case "--seed": seed = Integer.parseInt(args[++i]); break;
+				case "--results": results = Paths.get(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		ImmutableList<Entrant> entrants = scanEntrants(aiThreads);
+		System.out.println("Entrants: " + entrants);
+		var runner = new TournamentRunner(Games.factory(factory), Games.standardSetup(),
+				detectives, Duration.ofMillis(timeout));
+		System.out.print(runner.run(entrants, games, seed, threads, results));
+	}
+}
@@ -0,0 +1,434 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A {@link GameState} factory backed by a packed primitive representation.
+ * <br>
+ * Locations are {@link CompiledGraph} node indices in a {@code short[]} indexed by piece ordinal (the index in
+ * {@link ScotlandYard#ALL_PIECES}), tickets are five counters per piece in a flat {@code int[]}
+ * and detective occupancy is a {@code long[]} bitset over the dense node indices (four words on
+ * the standard 199 node map). The Guava collections required by {@link Board} are only created
+ * when asked for.
+ */
+public final class BitboardGameStateFactory implements Factory<GameState> {
+
+	static final int PIECES = 6;
+	static final int TICKETS = 5;
+	static final int MRX = 0;
+	static final int MRX_BIT = 1;
+
+	private static final int TAXI = Ticket.TAXI.ordinal();
+	private static final int BUS = Ticket.BUS.ordinal();
+	private static final int UNDERGROUND = Ticket.UNDERGROUND.ordinal();
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final int SECRET = Ticket.SECRET.ordinal();
+
+	static final byte NO_WINNER = 0;
+	static final byte MRX_WINS = 1;
+	static final byte DETECTIVES_WIN = 2;
+
+	private static final Ticket[] TICKET_VALUES = Ticket.values();
+
+	@Nonnull @Override public GameState build(GameSetup setup,
+	                                          Player mrX,
+	                                          ImmutableList<Player> detectives) {
+		Objects.requireNonNull(setup, "setup");
+		Objects.requireNonNull(mrX, "mrX");
+		Objects.requireNonNull(detectives, "detectives");
+		if (setup.moves.isEmpty()) throw new IllegalArgumentException("Moves is empty");
+		if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph is empty");
+		if (!mrX.isMrX()) throw new IllegalArgumentException("MrX is not a MrX piece");
+
+		CompiledGraph graph = CompiledGraph.of(setup);
+		short[] locations = new short[PIECES];
+		Arrays.fill(locations, (short) -1);
+		int[] tickets = new int[PIECES * TICKETS];
+		long[] occupancy = new long[graph.words()];
+		int detectiveMask = 0;
+
+		place(graph, mrX, MRX, locations, tickets);
+		for (Player detective : detectives) {
+			Objects.requireNonNull(detective, "detective");
+			if (!detective.isDetective())
+				throw new IllegalArgumentException(detective.piece() + " is not a detective");
+			if (detective.has(Ticket.DOUBLE) || detective.has(Ticket.SECRET))
+				throw new IllegalArgumentException(detective.piece() + " has DOUBLE or SECRET tickets");
+			int piece = ordinal(detective.piece());
+			if ((detectiveMask & (1 << piece)) != 0)
+				throw new IllegalArgumentException("Duplicate detective " + detective.piece());
+			place(graph, detective, piece, locations, tickets);
+			if (isSet(occupancy, locations[piece]))
+				throw new IllegalArgumentException("Detectives overlap at " + detective.location());
+			set(occupancy, locations[piece]);
+			detectiveMask |= 1 << piece;
+		}
+		Context context = new Context(setup, graph, mrX, detectives, detectiveMask);
+		return new State(context, locations, tickets, occupancy, TravelLog.empty(), MRX_BIT);
+	}
+
+	private static void place(CompiledGraph graph, Player player, int piece,
+	                          short[] locations, int[] tickets) {
+		int index = graph.index(player.location());
+		if (index < 0)
+			throw new IllegalArgumentException(player.piece() + " is not on the graph");
+		locations[piece] = (short) index;
+		for (Ticket ticket : TICKET_VALUES)
+			tickets[piece * TICKETS + ticket.ordinal()] = player.count(ticket);
+	}
+
+	/**
+	 * @param piece the piece
+	 * @return the index of the piece in {@link ScotlandYard#ALL_PIECES}; -1 for unknown pieces
+	 */
+	static int ordinal(Piece piece) {
+		if (piece instanceof MrX) return MRX;
+		if (piece instanceof Detective) return 1 + ((Detective) piece).ordinal();
+		return -1;
+	}
+
+	static boolean isSet(long[] bits, int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	static void set(long[] bits, int index) { bits[index >>> 6] |= 1L << index; }
+
+	static void clear(long[] bits, int index) { bits[index >>> 6] &= ~(1L << index); }
+
+	// ============ Rules over the packed representation, shared with MutableSearchState ============
+	// locations are dense node indices (-1 for absent pieces), tickets holds TICKETS counters per
+	// piece ordinal and occupancy is the detective bitset over dense node indices.
+
+	/**
+	 * @param turn MRX_BIT after a detective round, otherwise the detectives still to move
+	 * @param movable the detectives that can move
+	 * @return the pieces that move next
+	 */
+	static int remaining(int turn, int movable) {
+		int remaining = turn == MRX_BIT ? MRX_BIT : turn & movable;
+		return remaining == 0 ? MRX_BIT : remaining;
+	}
+
+	/**
+	 * @return NO_WINNER, MRX_WINS or DETECTIVES_WIN
+	 */
+	static byte winner(CompiledGraph graph, short[] locations, int[] tickets, long[] occupancy,
+	                   int movable, int remaining, int roundsLeft) {
+		if (isSet(occupancy, locations[MRX])) return DETECTIVES_WIN;
+		if (movable == 0) return MRX_WINS;
+		if (remaining == MRX_BIT) {
+			if (roundsLeft <= 0) return MRX_WINS;
+			if (!canMove(graph, locations, tickets, occupancy, MRX)) return DETECTIVES_WIN;
+		}
+		return NO_WINNER;
+	}
+
+	static int movableDetectives(CompiledGraph graph, short[] locations, int[] tickets,
+	                             long[] occupancy, int detectiveMask) {
+		int movable = 0;
+		for (int piece = 1; piece < PIECES; piece++)
+			if ((detectiveMask & (1 << piece)) != 0
+					&& canMove(graph, locations, tickets, occupancy, piece))
+				movable |= 1 << piece;
+		return movable;
+	}
+
+	static boolean canMove(CompiledGraph graph, short[] locations, int[] tickets,
+	                       long[] occupancy, int piece) {
+		int source = locations[piece];
+		int held = held(tickets, piece, -1);
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+			if (!isSet(occupancy, graph.target(e)) && (graph.tickets(e) & held) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param piece the piece ordinal
+	 * @param spent a ticket ordinal already spent this move; -1 for none
+	 * @return mask of the travel ticket ordinals the piece still holds, to be and-ed with
+	 * {@link CompiledGraph#tickets(int)}
+	 */
+	static int held(int[] tickets, int piece, int spent) {
+		int base = piece * TICKETS;
+		int mask = 0;
+		if (count(tickets, base, TAXI, spent) > 0) mask |= 1 << TAXI;
+		if (count(tickets, base, BUS, spent) > 0) mask |= 1 << BUS;
+		if (count(tickets, base, UNDERGROUND, spent) > 0) mask |= 1 << UNDERGROUND;
+		if (count(tickets, base, SECRET, spent) > 0) mask |= 1 << SECRET;
+		return mask;
+	}
+
+	private static int count(int[] tickets, int base, int ticket, int spent) {
+		return tickets[base + ticket] - (ticket == spent ? 1 : 0);
+	}
+
+	/**
+	 * Appends the moves of the remaining pieces, the caller checks there is no winner first
+	 *
+	 * @return the number of moves appended
+	 */
+	static int generate(CompiledGraph graph, short[] locations, int[] tickets, long[] occupancy,
+	                    int remaining, int roundsLeft, MoveList out) {
+		int size = out.size();
+		if (remaining == MRX_BIT) {
+			generateSingleMoves(graph, locations, tickets, occupancy, MRX, out);
+			if (tickets[DOUBLE] > 0 && roundsLeft >= 2)
+				generateDoubleMoves(graph, locations, tickets, occupancy, out);
+		} else for (int piece = 1; piece < PIECES; piece++)
+			if ((remaining & (1 << piece)) != 0)
+				generateSingleMoves(graph, locations, tickets, occupancy, piece, out);
+		return out.size() - size;
+	}
+
+	private static void generateSingleMoves(CompiledGraph graph, short[] locations, int[] tickets,
+	                                        long[] occupancy, int piece, MoveList out) {
+		int source = locations[piece];
+		int sourceId = graph.id(source);
+		int held = held(tickets, piece, -1);
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+			int destination = graph.target(e);
+			if (isSet(occupancy, destination)) continue;
+			int usable = graph.tickets(e) & held;
+			for (int t = 0; t < TICKETS; t++)
+				if ((usable & (1 << t)) != 0)
+					out.add(PackedMove.single(piece, sourceId, t, graph.id(destination)));
+		}
+	}
+
+	private static void generateDoubleMoves(CompiledGraph graph, short[] locations, int[] tickets,
+	                                        long[] occupancy, MoveList out) {
+		int source = locations[MRX];
+		int sourceId = graph.id(source);
+		int held = held(tickets, MRX, -1);
+		for (int e1 = graph.edgeStart(source); e1 < graph.edgeEnd(source); e1++) {
+			int first = graph.target(e1);
+			if (isSet(occupancy, first)) continue;
+			int firstId = graph.id(first);
+			int usable1 = graph.tickets(e1) & held;
+			for (int t1 = 0; t1 < TICKETS; t1++) {
+				if ((usable1 & (1 << t1)) == 0) continue;
+				int held2 = held(tickets, MRX, t1);
+				for (int e2 = graph.edgeStart(first); e2 < graph.edgeEnd(first); e2++) {
+					int second = graph.target(e2);
+					if (isSet(occupancy, second)) continue;
+					int usable2 = graph.tickets(e2) & held2;
+					for (int t2 = 0; t2 < TICKETS; t2++)
+						if ((usable2 & (1 << t2)) != 0) out.add(PackedMove.x2(sourceId,
+								t1, firstId, t2, graph.id(second)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Everything that stays the same for the whole game.
+	 */
+	private static final class Context {
+		final GameSetup setup;
+		final CompiledGraph graph;
+		final MoveTable moveTable;
+		final boolean[] reveals;
+		final int detectiveMask;
+		final ImmutableSet<Piece> players;
+		final ImmutableSet<Piece> mrXWins;
+		final ImmutableSet<Piece> detectivesWin;
+
+		Context(GameSetup setup, CompiledGraph graph, Player mrX,
+		        ImmutableList<Player> detectives, int detectiveMask) {
+			this.setup = setup;
+			this.graph = graph;
+			this.moveTable = MoveTable.of(graph);
+			this.reveals = new boolean[setup.moves.size()];
+			for (int i = 0; i < reveals.length; i++) reveals[i] = setup.moves.get(i);
+			this.detectiveMask = detectiveMask;
+			var builder = ImmutableSet.<Piece>builder().add(mrX.piece());
+			detectives.forEach(d -> builder.add(d.piece()));
+			this.players = builder.build();
+			this.mrXWins = ImmutableSet.of(mrX.piece());
+			this.detectivesWin = players.stream().filter(Piece::isDetective)
+					.collect(ImmutableSet.toImmutableSet());
+		}
+	}
+
+	private static final class State implements GameState, PackedMove.Generator {
+		private final Context context;
+		private final short[] locations;
+		private final int[] tickets;
+		private final long[] occupancy;
+		private final TravelLog log;
+		private final int remaining;
+		private final byte winner;
+
+		private ImmutableSet<Move> moves;
+
+		private State(Context context, short[] locations, int[] tickets, long[] occupancy,
+		              TravelLog log, int turn) {
+			this.context = context;
+			this.locations = locations;
+			this.tickets = tickets;
+			this.occupancy = occupancy;
+			this.log = log;
+			int movable = movableDetectives(context.graph, locations, tickets, occupancy,
+					context.detectiveMask);
+			this.remaining = remaining(turn, movable);
+			this.winner = winner(context.graph, locations, tickets, occupancy, movable, remaining,
+					roundsLeft());
+		}
+
+		private int roundsLeft() { return context.reveals.length - log.size(); }
+
+		@Nonnull @Override public GameSetup getSetup() { return context.setup; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() { return context.players; }
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			int ordinal = ordinal(detective);
+			int location = ordinal < 0 ? -1 : locations[ordinal];
+			return location < 0
+					? Optional.empty()
+					: Optional.of(context.graph.id(location));
+		}
+
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			int ordinal = ordinal(piece);
+			if (ordinal < 0 || locations[ordinal] < 0) return Optional.empty();
+			int base = ordinal * TICKETS;
+			return Optional.of(ticket -> tickets[base + ticket.ordinal()]);
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
+			return log.asImmutableList();
+		}
+
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+			switch (winner) {
+				case MRX_WINS: return context.mrXWins;
+				case DETECTIVES_WIN: return context.detectivesWin;
+				default: return ImmutableSet.of();
+			}
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			if (moves == null) moves = generateMoves();
+			return moves;
+		}
+
+		private ImmutableSet<Move> generateMoves() {
+			if (winner != NO_WINNER) return ImmutableSet.of();
+			MoveList list = new MoveList();
+			generate(list);
+			return list.toMoves(context.moveTable);
+		}
+
+		@Override public int generate(@Nonnull MoveList out) {
+			if (winner != NO_WINNER) return 0;
+			return BitboardGameStateFactory.generate(context.graph, locations, tickets, occupancy,
+					remaining, roundsLeft(), out);
+		}
+
+		private boolean isLegal(Move move) {
+			if (winner != NO_WINNER) return false;
+			int piece = ordinal(move.commencedBy());
+			if (piece < 0 || (remaining & (1 << piece)) == 0) return false;
+			if (context.graph.index(move.source()) != locations[piece]) return false;
+			return move.accept(new Move.Visitor<Boolean>() {
+				@Override public Boolean visit(SingleMove m) {
+					return isLegalStep(piece, locations[piece], m.ticket, m.destination, -1);
+				}
+				@Override public Boolean visit(DoubleMove m) {
+					int first = context.graph.index(m.destination1);
+					return piece == MRX && tickets[DOUBLE] > 0 && roundsLeft() >= 2
+							&& isLegalStep(piece, locations[piece], m.ticket1, m.destination1, -1)
+							&& isLegalStep(piece, first, m.ticket2, m.destination2,
+							m.ticket1.ordinal());
+				}
+			});
+		}
+
+		private boolean isLegalStep(int piece, int source, Ticket ticket, int destinationId,
+		                            int spent) {
+			int destination = context.graph.index(destinationId);
+			if (destination < 0 || isSet(occupancy, destination)) return false;
+			int edge = context.graph.edge(source, destination);
+			return edge >= 0
+					&& (context.graph.tickets(edge) & held(tickets, piece, spent)
+					& CompiledGraph.mask(ticket)) != 0;
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			if (!isLegal(move)) throw new IllegalArgumentException("Illegal move: " + move);
+			return move.accept(new Move.Visitor<GameState>() {
+				@Override public GameState visit(SingleMove m) {
+					int piece = ordinal(m.commencedBy());
+					return piece == MRX
+							? mrXMove(context.graph.index(m.destination), m.ticket)
+							: detectiveMove(piece, context.graph.index(m.destination), m.ticket);
+				}
+				@Override public GameState visit(DoubleMove m) {
+					return mrXMove(context.graph.index(m.destination2), m.ticket1, m.ticket2,
+							m.destination1, m.destination2);
+				}
+			});
+		}
+
+		private State mrXMove(int destination, Ticket ticket) {
+			short[] newLocations = locations.clone();
+			newLocations[MRX] = (short) destination;
+			int[] newTickets = tickets.clone();
+			newTickets[ticket.ordinal()]--;
+			TravelLog newLog = log.append(entry(log.size(), ticket, context.graph.id(destination)));
+			return new State(context, newLocations, newTickets, occupancy, newLog,
+					context.detectiveMask);
+		}
+
+		private State mrXMove(int destination, Ticket first, Ticket second,
+		                      int firstId, int secondId) {
+			short[] newLocations = locations.clone();
+			newLocations[MRX] = (short) destination;
+			int[] newTickets = tickets.clone();
+			newTickets[first.ordinal()]--;
+			newTickets[second.ordinal()]--;
+			newTickets[DOUBLE]--;
+			TravelLog newLog = log.append(entry(log.size(), first, firstId))
+					.append(entry(log.size() + 1, second, secondId));
+			return new State(context, newLocations, newTickets, occupancy, newLog,
+					context.detectiveMask);
+		}
+
+		private State detectiveMove(int piece, int destination, Ticket ticket) {
+			short[] newLocations = locations.clone();
+			long[] newOccupancy = occupancy.clone();
+			clear(newOccupancy, locations[piece]);
+			set(newOccupancy, destination);
+			newLocations[piece] = (short) destination;
+			int[] newTickets = tickets.clone();
+			newTickets[piece * TICKETS + ticket.ordinal()]--;
+			newTickets[MRX * TICKETS + ticket.ordinal()]++;
+			return new State(context, newLocations, newTickets, newOccupancy, log,
+					remaining & ~(1 << piece));
+		}
+
+		private LogEntry entry(int round, Ticket ticket, int location) {
+			return context.reveals[round]
+					? LogEntry.reveal(ticket, location)
+					: LogEntry.hidden(ticket);
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A game graph compiled into flat primitive arrays for move generation.
+ * <br>
+ * Nodes are renumbered to dense indices {@code 0..size()-1} in ascending id order and
+ * neighbours are stored as compressed sparse rows: the edges leaving node {@code n} are
+ * {@code edgeStart(n)} (inclusive) to {@code edgeEnd(n)} (exclusive), sorted by target. Every
+ * edge carries a bitmask of {@link Transport} ordinals, ferries included, and the matching
+ * bitmask of {@link Ticket} ordinals that can pay for it, so neighbours can be enumerated by
+ * ticket with plain int arithmetic.
+ * <br>
+ * Instances are immutable and compiled once per graph instance, see {@link #of(GameSetup)}.
+ */
+public final class CompiledGraph {
+
+	private static final LoadingCache<ImmutableValueGraph<Integer, ImmutableSet<Transport>>,
+			CompiledGraph> CACHE = CacheBuilder.newBuilder().weakKeys()
+			.build(CacheLoader.from(CompiledGraph::new));
+
+	/**
+	 * Receives the neighbours enumerated by
+	 * {@link CompiledGraph#forEachNeighbour(int, int, NeighbourConsumer)}
+	 */
+	@FunctionalInterface
+	public interface NeighbourConsumer {
+		/**
+		 * @param target the dense index of the neighbour
+		 * @param tickets mask of ticket ordinals that can pay for the edge, limited to the
+		 * requested ones; never 0
+		 */
+		void accept(int target, int tickets);
+	}
+
+	private final int[] ids;
+	private final int[] indices;
+	private final int[] offsets;
+	private final char[] targets;
+	private final byte[] transports;
+	private final byte[] tickets;
+	private final long fingerprint;
+
+	private CompiledGraph(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		if (graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph is empty");
+		ids = graph.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+		if (ids[0] < 0 || ids[ids.length - 1] > 0xFFFF)
+			throw new IllegalArgumentException("Node ids must be within [0, 65535]");
+		indices = new int[ids[ids.length - 1] + 1];
+		Arrays.fill(indices, -1);
+		for (int i = 0; i < ids.length; i++) indices[ids[i]] = i;
+		offsets = new int[ids.length + 1];
+		int edges = 0;
+		for (int id : ids) edges += graph.adjacentNodes(id).size();
+		targets = new char[edges];
+		transports = new byte[edges];
+		tickets = new byte[edges];
+		int edge = 0;
+		for (int i = 0; i < ids.length; i++) {
+			offsets[i] = edge;
+			int[] neighbours = graph.adjacentNodes(ids[i]).stream()
+					.mapToInt(Integer::intValue).sorted().toArray();
+			for (int neighbour : neighbours) {
+				int mask = 0;
+				for (Transport t : graph.edgeValueOrDefault(ids[i], neighbour, ImmutableSet.of()))
+					mask |= mask(t);
+				targets[edge] = (char) indices[neighbour];
+				transports[edge] = (byte) mask;
+				tickets[edge] = (byte) ticketsFor(mask);
+				edge++;
+			}
+		}
+		offsets[ids.length] = edge;
+		fingerprint = fingerprint(ids, offsets, targets, transports);
+	}
+
+	// 64 bit FNV-1a over the node ids and the edges with their transports
+	private static long fingerprint(int[] ids, int[] offsets, char[] targets, byte[] transports) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < ids.length; i++) {
+			hash = (hash ^ ids[i]) * 0x100000001b3L;
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				hash = (hash ^ targets[e]) * 0x100000001b3L;
+				hash = (hash ^ transports[e]) * 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the compiled form of the setup's graph, shared by every setup using the same graph
+	 */
+	@Nonnull public static CompiledGraph of(@Nonnull GameSetup setup) { return of(setup.graph); }
+
+	/**
+	 * @param graph the game graph
+	 * @return the compiled form of the graph, compiled on first use and cached per instance
+	 */
+	@Nonnull public static CompiledGraph of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	/**
+	 * @param ticket the ticket
+	 * @return the bit of the ticket in a ticket mask
+	 */
+	public static int mask(@Nonnull Ticket ticket) { return 1 << ticket.ordinal(); }
+
+	/**
+	 * @param transport the transport
+	 * @return the bit of the transport in a transport mask
+	 */
+	public static int mask(@Nonnull Transport transport) { return 1 << transport.ordinal(); }
+
+	// the four tickets a detective or MrX can travel with, as bits of a travel subset
+	private static final int TAXI = Ticket.TAXI.ordinal();
+	private static final int BUS = Ticket.BUS.ordinal();
+	private static final int UNDERGROUND = Ticket.UNDERGROUND.ordinal();
+	private static final int SECRET = Ticket.SECRET.ordinal();
+	private static final int[] TRAVEL = {TAXI, BUS, UNDERGROUND, SECRET};
+
+	/**
+	 * Number of travel subsets, see {@link #travelSubset(int)}
+	 */
+	static final int TRAVEL_SUBSETS = 1 << TRAVEL.length;
+	/**
+	 * Number of bits in a travel subset, see {@link #travelTicket(int)}
+	 */
+	static final int TRAVEL_BITS = TRAVEL.length;
+
+	/**
+	 * @param ticketMask a ticket mask
+	 * @return its taxi, bus, underground and secret bits compressed into 0..15, for tables kept
+	 * per set of tickets held
+	 */
+	static int travelSubset(int ticketMask) {
+		// unrolled in TRAVEL order, move generation looks this up for every piece
+		return ((ticketMask >>> TAXI) & 1)
+				| ((ticketMask >>> BUS) & 1) << 1
+				| ((ticketMask >>> UNDERGROUND) & 1) << 2
+				| ((ticketMask >>> SECRET) & 1) << 3;
+	}
+
+	/**
+	 * @param bit a bit of a travel subset, below {@link #TRAVEL_BITS}
+	 * @return the ordinal of the ticket the bit stands for
+	 */
+	static int travelTicket(int bit) { return TRAVEL[bit]; }
+
+	/**
+	 * @param subset a travel subset, see {@link #travelSubset(int)}
+	 * @return the ticket mask it stands for
+	 */
+	static int travelTickets(int subset) {
+		int mask = 0;
+		for (int i = 0; i < TRAVEL.length; i++) mask |= ((subset >>> i) & 1) << TRAVEL[i];
+		return mask;
+	}
+
+	/**
+	 * @param transports a transport mask
+	 * @return mask of the tickets that can pay for any of the transports; secret tickets cover
+	 * every transport
+	 */
+	public static int ticketsFor(int transports) {
+		int mask = 0;
+		for (Transport t : Transport.values())
+			if ((transports & mask(t)) != 0) mask |= mask(t.requiredTicket());
+		return transports != 0 ? mask | mask(Ticket.SECRET) : 0;
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int size() { return ids.length; }
+
+	/**
+	 * @return a hash of the nodes and edges; graphs with the same nodes, edges and transports
+	 * have the same fingerprint, whichever instance they were compiled from
+	 */
+	public long fingerprint() { return fingerprint; }
+
+	/**
+	 * @return the number of directed edges, each undirected edge is counted in both directions
+	 */
+	public int edges() { return targets.length; }
+
+	/**
+	 * @return the number of {@code long}s needed for a bitset over the dense node indices
+	 */
+	public int words() { return (ids.length + 63) >>> 6; }
+
+	/**
+	 * @param id a node id as used by {@link GameSetup#graph}
+	 * @return the dense index of the node; -1 if the node is not on the graph
+	 */
+	public int index(int id) { return id >= 0 && id < indices.length ? indices[id] : -1; }
+
+	/**
+	 * @param index a dense node index
+	 * @return the node id as used by {@link GameSetup#graph}
+	 */
+	public int id(int index) { return ids[index]; }
+
+	/**
+	 * @param index a dense node index
+	 * @return the first edge leaving the node
+	 */
+	public int edgeStart(int index) { return offsets[index]; }
+
+	/**
+	 * @param index a dense node index
+	 * @return one past the last edge leaving the node
+	 */
+	public int edgeEnd(int index) { return offsets[index + 1]; }
+
+	/**
+	 * @param index a dense node index
+	 * @return the number of neighbours of the node
+	 */
+	public int degree(int index) { return offsets[index + 1] - offsets[index]; }
+
+	/**
+	 * @param edge an edge
+	 * @return the dense index of the node the edge leads to
+	 */
+	public int target(int edge) { return targets[edge]; }
+
+	/**
+	 * @param edge an edge
+	 * @return mask of {@link Transport} ordinals serving the edge
+	 */
+	public int transports(int edge) { return transports[edge]; }
+
+	/**
+	 * @param edge an edge
+	 * @return mask of {@link Ticket} ordinals that can pay for the edge
+	 */
+	public int tickets(int edge) { return tickets[edge]; }
+
+	/**
+	 * @param from a dense node index
+	 * @param to a dense node index
+	 * @return the edge from {@code from} to {@code to}; -1 if they are not adjacent
+	 */
+	public int edge(int from, int to) {
+		for (int e = offsets[from]; e < offsets[from + 1]; e++)
+			if (targets[e] == to) return e;
+		return -1;
+	}
+
+	/**
+	 * Enumerates the neighbours reachable with at least one of the given tickets
+	 *
+	 * @param index a dense node index
+	 * @param ticketMask mask of usable ticket ordinals
+	 * @param consumer receives each neighbour with the usable tickets for its edge
+	 */
+	public void forEachNeighbour(int index, int ticketMask, @Nonnull NeighbourConsumer consumer) {
+		for (int e = offsets[index]; e < offsets[index + 1]; e++) {
+			int usable = tickets[e] & ticketMask;
+			if (usable != 0) consumer.accept(targets[e], usable);
+		}
+	}
+
+	/**
+	 * Writes the neighbours reachable with at least one of the given tickets into a buffer
+	 *
+	 * @param index a dense node index
+	 * @param ticketMask mask of usable ticket ordinals
+	 * @param out receives the dense neighbour indices; must hold at least {@link #degree(int)}
+	 * @return the number of neighbours written
+	 */
+	public int neighbours(int index, int ticketMask, @Nonnull int[] out) {
+		int count = 0;
+		for (int e = offsets[index]; e < offsets[index + 1]; e++)
+			if ((tickets[e] & ticketMask) != 0) out[count++] = targets[e];
+		return count;
+	}
+}
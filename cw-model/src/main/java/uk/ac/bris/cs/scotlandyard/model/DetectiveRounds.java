@@ -0,0 +1,325 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.PIECES;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.TICKETS;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.isSet;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.set;
+
+/**
+ * Generates the rest of a detective round as joint moves, so a search can take a whole round as
+ * one step.
+ * <br>
+ * Played one at a time, the detectives still to move can go in any order, and every order of the
+ * same moves reaches the same position. A joint round is instead one move, or a pass, per
+ * detective still to move, listed once in an order it can be played in: destinations are
+ * distinct, a detective only moves onto a node another one leaves after that one has gone, and
+ * cycles of detectives swapping nodes are rejected. A detective passes only when the others leave
+ * it stranded, as the one at a time rules drop it from the round. Any move onto MrX ends the game,
+ * so each is a round of its own and they come first.
+ * <br>
+ * Rounds with a detective following another or passing are checked by playing them on the state,
+ * trying orders until one keeps every mover in the round; the others need no check, as every
+ * destination stays free until its detective moves.
+ * <br>
+ * With five detectives the rounds number in the thousands, so a search with a time budget should
+ * use {@link #generate(MutableSearchState, long, long)}, which gives up on positions with too many
+ * of them and at a deadline, and play such positions one detective at a time.
+ * <br>
+ * Meant to be allocated once per search ply and reused; not thread safe.
+ */
+public final class DetectiveRounds {
+
+	/**
+	 * Returned by {@link #generate(MutableSearchState, long, long)} when it gave up
+	 */
+	public static final int GAVE_UP = -1;
+
+	private static final int PASS = -1;
+	// how often the clock is read, in rounds considered minus one
+	private static final int CLOCK_MASK = 255;
+	private static final int DOUBLE = ScotlandYard.Ticket.DOUBLE.ordinal();
+
+	// every round's moves back to back, round r is moves[starts[r], starts[r + 1])
+	private final MoveList moves = new MoveList();
+	private int[] starts = new int[65];
+	private int size;
+
+	// scratch of generate()
+	private final MoveList available = new MoveList();
+	private final int[] pieces = new int[PIECES];
+	private final int[] from = new int[PIECES];
+	private final int[] to = new int[PIECES];
+	// the nodes free now each detective can move to, bar MrX's
+	private final int[] open = new int[PIECES];
+	private final int[] chosen = new int[PIECES];
+	private final int[] sources = new int[PIECES];
+	private final int[] destinations = new int[PIECES];
+	private final boolean[] played = new boolean[PIECES];
+	private final long[] order = new long[PIECES];
+	private long[] occupied = new long[0];
+	private int count;
+	private int mrX;
+	private boolean timed;
+	private long deadline;
+	private long considered;
+	private boolean stopped;
+
+	/**
+	 * Replaces the rounds with those of a position.
+	 *
+	 * @param state the position, with detectives to move; left as it was
+	 * @return the number of rounds, 0 if the game is over
+	 * @throws IllegalStateException if MrX is to move
+	 */
+	public int generate(@Nonnull MutableSearchState state) {
+		timed = false;
+		return generate(state, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Replaces the rounds with those of a position, unless there are too many or time runs out.
+	 *
+	 * @param state the position, with detectives to move; left as it was
+	 * @param limit give up if the product of the detectives' move counts, a bound on the rounds to
+	 * consider, is more than this
+	 * @param deadline the {@link System#nanoTime()} to give up at
+	 * @return the number of rounds, 0 if the game is over, or {@link #GAVE_UP} with no rounds left
+	 * @throws IllegalStateException if MrX is to move
+	 */
+	public int generate(@Nonnull MutableSearchState state, long limit, long deadline) {
+		timed = true;
+		this.deadline = deadline;
+		return generate(state, limit);
+	}
+
+	private int generate(MutableSearchState state, long limit) {
+		Objects.requireNonNull(state);
+		moves.clear();
+		size = 0;
+		considered = 0;
+		stopped = false;
+		if (state.isGameOver()) return 0;
+		if (state.isMrXTurn()) throw new IllegalStateException("MrX is to move");
+		CompiledGraph graph = state.graph();
+		mrX = graph.id(state.locationIndex(MRX));
+		if (occupied.length != graph.words()) occupied = new long[graph.words()];
+		else Arrays.fill(occupied, 0);
+		for (int piece = 1; piece < PIECES; piece++)
+			if ((state.detectives() & (1 << piece)) != 0) set(occupied, state.locationIndex(piece));
+
+		// every detective still to move, with its moves onto nodes free now or held by another
+		// detective still to move, which may leave first
+		available.clear();
+		count = 0;
+		for (int piece = 1; piece < PIECES; piece++)
+			if ((state.remaining() & (1 << piece)) != 0) {
+				pieces[count] = piece;
+				sources[count] = graph.id(state.locationIndex(piece));
+				count++;
+			}
+		for (int k = 0; k < count; k++) {
+			int piece = pieces[k];
+			int source = state.locationIndex(piece);
+			int held = 0;
+			for (int ticket = 0; ticket < TICKETS; ticket++)
+				if (ticket != DOUBLE && state.ticketCount(piece, ticket) > 0) held |= 1 << ticket;
+			from[k] = available.size();
+			open[k] = 0;
+			for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+				int destination = graph.id(graph.target(e));
+				boolean free = !isSet(occupied, graph.target(e));
+				if (!free && leaderOf(destination) < 0) continue;
+				int usable = graph.tickets(e) & held;
+				if (usable != 0 && free && destination != mrX) open[k]++;
+				for (int ticket = 0; ticket < TICKETS; ticket++)
+					if ((usable & (1 << ticket)) != 0)
+						available.add(PackedMove.single(piece, sources[k], ticket, destination));
+			}
+			to[k] = available.size();
+		}
+		long product = 1;
+		for (int k = 0; k < count && product <= limit; k++) product *= to[k] - from[k] + 1;
+		if (product > limit) return GAVE_UP;
+		for (int i = 0; i < available.size(); i++) {
+			long move = available.get(i);
+			if (PackedMove.destination(move) == mrX) {
+				add(move);
+				end();
+			}
+		}
+		choose(state, 0);
+		if (!stopped) return size;
+		moves.clear();
+		size = 0;
+		return GAVE_UP;
+	}
+
+	// picks a move or a pass for the k-th detective, then checks the round
+	private void choose(MutableSearchState state, int k) {
+		if (k == count) {
+			if (timed && (++considered & CLOCK_MASK) == 0 && System.nanoTime() - deadline >= 0)
+				stopped = true;
+			else accept(state);
+			return;
+		}
+		for (int i = from[k]; i < to[k] && !stopped; i++) {
+			int destination = PackedMove.destination(available.get(i));
+			if (destination == mrX || taken(destination, k)) continue;
+			chosen[k] = i;
+			destinations[k] = destination;
+			choose(state, k + 1);
+		}
+		// only the others can strand a detective, one node each
+		if (open[k] >= count || stopped) return;
+		chosen[k] = PASS;
+		destinations[k] = PASS;
+		choose(state, k + 1);
+	}
+
+	private boolean taken(int destination, int k) {
+		for (int j = 0; j < k; j++) if (destinations[j] == destination) return true;
+		return false;
+	}
+
+	private void accept(MutableSearchState state) {
+		boolean check = false;
+		int moving = 0;
+		for (int k = 0; k < count; k++) {
+			if (chosen[k] == PASS) {
+				if (!stranded(k)) return;
+				check = true;
+				continue;
+			}
+			moving++;
+			int leader = leader(k);
+			if (leader < 0) continue;
+			// following a detective that stays, or a cycle back to this one
+			if (chosen[leader] == PASS || cyclic(k)) return;
+			check = true;
+		}
+		if (moving == 0) return;
+		if (!check) {
+			for (int k = 0; k < count; k++) add(available.get(chosen[k]));
+			end();
+			return;
+		}
+		Arrays.fill(played, 0, count, false);
+		if (playable(state, 0, moving)) {
+			for (int i = 0; i < moving; i++) add(order[i]);
+			end();
+		}
+	}
+
+	// a pass needs every node the detective could move to now taken by another detective
+	private boolean stranded(int k) {
+		for (int i = from[k]; i < to[k]; i++) {
+			int destination = PackedMove.destination(available.get(i));
+			if (destination != mrX && leaderOf(destination) < 0 && !taken(destination, count))
+				return false;
+		}
+		return true;
+	}
+
+	// the detective leaving the node the k-th one moves to; -1 if the node starts free
+	private int leader(int k) { return leaderOf(destinations[k]); }
+
+	private int leaderOf(int destination) {
+		for (int j = 0; j < count; j++) if (sources[j] == destination) return j;
+		return -1;
+	}
+
+	private boolean cyclic(int k) {
+		int next = k;
+		for (int steps = 0; steps < count; steps++) {
+			next = leader(next);
+			if (next < 0 || chosen[next] == PASS) return false;
+			if (next == k) return true;
+		}
+		return false;
+	}
+
+	// finds an order to play the round in, trying the lower pieces first among the detectives
+	// whose leader has gone; every mover must still be in the round when it moves and every pass
+	// must have been dropped from it by the end
+	private boolean playable(MutableSearchState state, int made, int moving) {
+		if (made == moving) {
+			if (state.isGameOver()) return true;
+			for (int k = 0; k < count; k++)
+				if (chosen[k] == PASS && (state.remaining() & (1 << pieces[k])) != 0) return false;
+			return true;
+		}
+		if (state.isGameOver()) return false;
+		for (int k = 0; k < count; k++) {
+			if (played[k] || chosen[k] == PASS || (state.remaining() & (1 << pieces[k])) == 0)
+				continue;
+			int leader = leader(k);
+			if (leader >= 0 && !played[leader]) continue;
+			long move = available.get(chosen[k]);
+			played[k] = true;
+			order[made] = move;
+			state.make(move);
+			boolean found = playable(state, made + 1, moving);
+			state.unmake();
+			played[k] = false;
+			if (found) return true;
+		}
+		return false;
+	}
+
+	private void add(long move) { moves.add(move); }
+
+	private void end() {
+		if (size + 2 > starts.length) starts = Arrays.copyOf(starts, starts.length * 2);
+		starts[++size] = moves.size();
+	}
+
+	/**
+	 * @return the number of rounds generated
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @param round the round index
+	 * @return the number of moves in the round, at least 1
+	 */
+	public int length(int round) {
+		Objects.checkIndex(round, size);
+		return starts[round + 1] - starts[round];
+	}
+
+	/**
+	 * @param round the round index
+	 * @param index the move index within the round
+	 * @return the packed move, in the order the round is played
+	 */
+	public long move(int round, int index) {
+		return moves.get(starts[round] + Objects.checkIndex(index, length(round)));
+	}
+
+	/**
+	 * Plays a round; take it back with {@link #unmake(MutableSearchState, int)}.
+	 *
+	 * @param state the position the rounds were generated for
+	 * @param round the round index
+	 */
+	public void make(@Nonnull MutableSearchState state, int round) {
+		int end = starts[Objects.checkIndex(round, size) + 1];
+		for (int i = starts[round]; i < end; i++) state.make(moves.get(i));
+	}
+
+	/**
+	 * Takes back a round played with {@link #make(MutableSearchState, int)}.
+	 *
+	 * @param state the position the round was played on
+	 * @param round the round index
+	 */
+	public void unmake(@Nonnull MutableSearchState state, int round) {
+		for (int i = length(round); i > 0; i--) state.unmake();
+	}
+}
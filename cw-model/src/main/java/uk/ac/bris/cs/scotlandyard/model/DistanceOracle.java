@@ -0,0 +1,210 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * All-pairs shortest distances, in moves, for every set of travel tickets a player could hold.
+ * <br>
+ * Which edges a player can take depends only on which of taxi, bus, underground and secret
+ * tickets they hold (secret tickets pay for any edge, ferries included), so there are 16
+ * {@code short} matrices over the dense node indices of a {@link CompiledGraph}. Ticket counts
+ * are ignored. Each matrix is computed on first use with a breadth-first search from every node
+ * in parallel; {@link #load(CompiledGraph, Path)} instead maps all of them from a cache file
+ * named after {@link CompiledGraph#fingerprint()}, writing it first if needed. Lookups are a
+ * single primitive read.
+ * <br>
+ * Instances are immutable and safe to share between threads.
+ */
+public final class DistanceOracle {
+
+	/**
+	 * The distance between nodes that cannot reach each other
+	 */
+	public static final int UNREACHABLE = Short.MAX_VALUE;
+
+	private static final LoadingCache<CompiledGraph, DistanceOracle> CACHE =
+			CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(DistanceOracle::new));
+
+	private static final int SUBSETS = CompiledGraph.TRAVEL_SUBSETS;
+
+	// cache file: magic, node count, fingerprint, then the 16 matrices in subset order
+	private static final int MAGIC = 0x53594431;
+	private static final int HEADER_BYTES = 16;
+
+	private final CompiledGraph graph;
+	private final int size;
+	private final AtomicReferenceArray<ShortBuffer> matrices;
+
+	private DistanceOracle(CompiledGraph graph) {
+		this.graph = graph;
+		this.size = graph.size();
+		this.matrices = new AtomicReferenceArray<>(SUBSETS);
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the oracle for the setup's graph, see {@link #of(CompiledGraph)}
+	 */
+	@Nonnull public static DistanceOracle of(@Nonnull GameSetup setup) {
+		return of(CompiledGraph.of(setup));
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the oracle for the graph, created once per graph; matrices are computed on first use
+	 */
+	@Nonnull public static DistanceOracle of(@Nonnull CompiledGraph graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	/**
+	 * Maps every matrix from {@code distances-<fingerprint>.bin} in the given directory, computing
+	 * and writing the file first if it is missing or does not match the graph. A stale file is
+	 * replaced, never rewritten in place, so oracles already mapping it stay valid.
+	 *
+	 * @param graph the compiled graph
+	 * @param directory the cache directory, created if needed
+	 * @return a new oracle backed by the mapped file
+	 * @throws IOException if the file cannot be written or mapped
+	 */
+	@Nonnull public static DistanceOracle load(@Nonnull CompiledGraph graph, @Nonnull Path directory)
+			throws IOException {
+		Path file = directory.resolve(String.format("distances-%016x.bin", graph.fingerprint()));
+		DistanceOracle oracle = new DistanceOracle(graph);
+		long bytes = HEADER_BYTES + (long) SUBSETS * oracle.size * oracle.size * Short.BYTES;
+		if (!Files.exists(file) || Files.size(file) != bytes || !matches(file, graph)) {
+			Files.createDirectories(directory);
+			oracle.write(file, directory);
+		}
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+		}
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+		int matrixBytes = oracle.size * oracle.size * Short.BYTES;
+		for (int subset = 0; subset < SUBSETS; subset++) {
+			ByteBuffer slice = mapped.slice(HEADER_BYTES + subset * matrixBytes, matrixBytes)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			oracle.matrices.set(subset, slice.asShortBuffer());
+		}
+		return oracle;
+	}
+
+	private static boolean matches(Path file, CompiledGraph graph) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) return false;
+			}
+		}
+		header.flip();
+		return header.getInt() == MAGIC
+				&& header.getInt() == graph.size() && header.getLong() == graph.fingerprint();
+	}
+
+	// written to a temporary file and moved into place, so readers never see half a file
+	private void write(Path file, Path directory) throws IOException {
+		IntStream.range(0, SUBSETS).parallel().forEach(this::matrix);
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + SUBSETS * size * size * Short.BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(size).putLong(graph.fingerprint());
+		for (int subset = 0; subset < SUBSETS; subset++) {
+			ShortBuffer matrix = matrices.get(subset).duplicate();
+			while (matrix.hasRemaining()) buffer.putShort(matrix.get());
+		}
+		buffer.flip();
+		Path temporary = Files.createTempFile(directory, "distances", ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) channel.write(buffer);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return the graph the distances are for
+	 */
+	@Nonnull public CompiledGraph graph() { return graph; }
+
+	/**
+	 * @param from a dense node index
+	 * @param to a dense node index
+	 * @param ticketMask mask of the ticket ordinals held, see {@link CompiledGraph#mask(Ticket)};
+	 * the double bit is ignored
+	 * @return the fewest moves from {@code from} to {@code to} using only the given tickets, or
+	 * {@link #UNREACHABLE}
+	 */
+	public int distance(int from, int to, int ticketMask) {
+		return matrix(CompiledGraph.travelSubset(ticketMask)).get(from * size + to);
+	}
+
+	/**
+	 * @param from a node id as used by {@link GameSetup#graph}
+	 * @param to a node id as used by {@link GameSetup#graph}
+	 * @param ticketMask mask of the ticket ordinals held, see {@link #distance(int, int, int)}
+	 * @return the fewest moves between the nodes, or {@link #UNREACHABLE}
+	 */
+	public int distanceBetween(int from, int to, int ticketMask) {
+		int fromIndex = graph.index(from);
+		int toIndex = graph.index(to);
+		if (fromIndex < 0 || toIndex < 0)
+			throw new IllegalArgumentException(
+					"Node " + (fromIndex < 0 ? from : to) + " is not on the graph");
+		return distance(fromIndex, toIndex, ticketMask);
+	}
+
+	private ShortBuffer matrix(int subset) {
+		ShortBuffer matrix = matrices.get(subset);
+		if (matrix == null) {
+			matrix = ShortBuffer.wrap(compute(CompiledGraph.travelTickets(subset)))
+					.asReadOnlyBuffer();
+			if (!matrices.compareAndSet(subset, null, matrix)) matrix = matrices.get(subset);
+		}
+		return matrix;
+	}
+
+	private short[] compute(int ticketMask) {
+		short[] distances = new short[size * size];
+		Arrays.fill(distances, (short) UNREACHABLE);
+		// each source writes only its own row
+		IntStream.range(0, size).parallel().forEach(source -> {
+			int[] queue = new int[size];
+			int row = source * size;
+			int head = 0, tail = 0;
+			distances[row + source] = 0;
+			queue[tail++] = source;
+			while (head < tail) {
+				int node = queue[head++];
+				short next = (short) (distances[row + node] + 1);
+				for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+					int target = graph.target(e);
+					if ((graph.tickets(e) & ticketMask) == 0
+							|| distances[row + target] != UNREACHABLE) continue;
+					distances[row + target] = next;
+					queue[tail++] = target;
+				}
+			}
+		});
+		return distances;
+	}
+}
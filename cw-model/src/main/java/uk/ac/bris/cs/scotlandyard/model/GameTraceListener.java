@@ -0,0 +1,80 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+/**
+ * Receives trace events from a game state implementation.
+ * <br>
+ * All methods default to no-op; {@link #NONE} is used when nothing is attached, so the calls
+ * inline to nothing and tracing costs nothing in headless runs. Listeners are handed the states
+ * themselves, anything expensive such as {@link Object#toString()} is left to the listener.
+ */
+public interface GameTraceListener {
+
+	/**
+	 * A listener that ignores every event
+	 */
+	GameTraceListener NONE = new GameTraceListener() {};
+
+	/**
+	 * Why a winner was decided
+	 */
+	enum WinReason {
+		/**
+		 * A detective landed on MrX
+		 */
+		MRX_CAPTURED(false),
+		/**
+		 * It is MrX's turn and he has no moves left
+		 */
+		MRX_STUCK(false),
+		/**
+		 * None of the detectives can move any more
+		 */
+		DETECTIVES_STUCK(true),
+		/**
+		 * MrX survived every round of the travel log
+		 */
+		ROUNDS_COMPLETE(true);
+
+		private final boolean mrXWins;
+		WinReason(boolean mrXWins) {this.mrXWins = mrXWins;}
+		/**
+		 * @return true if MrX wins for this reason, false if the detectives do
+		 */
+		public boolean mrXWins() { return mrXWins; }
+	}
+
+	/**
+	 * Called once a new game state has been created, including the initial one
+	 *
+	 * @param state the new state
+	 */
+	default void onStateCreated(@Nonnull GameState state) {}
+
+	/**
+	 * Called when a newly created game state has a winner
+	 *
+	 * @param state the state with the winner
+	 * @param winner the winning pieces
+	 * @param reason why the game ended
+	 */
+	default void onWinnerDecided(@Nonnull GameState state,
+	                             @Nonnull ImmutableSet<Piece> winner,
+	                             @Nonnull WinReason reason) {}
+
+	/**
+	 * Called after {@link GameState#advance(Move)} has produced the next state
+	 *
+	 * @param before the state the move was made on
+	 * @param move the move
+	 * @param after the resulting state
+	 */
+	default void onMoveApplied(@Nonnull GameState before,
+	                           @Nonnull Move move,
+	                           @Nonnull GameState after) {}
+}
@@ -3,6 +3,7 @@ package uk.ac.bris.cs.scotlandyard.model;
 import java.io.Serializable;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.annotation.Nonnull;
 
@@ -18,12 +19,21 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
  * A POJO representing log entries of the MrX's travel log.
  * <br>
  * Use the static factory methods {@link #hidden(Ticket)} and {@link #reveal(Ticket, int)} to
- * create new instances.
+ * create new instances. Entries are shared: every hidden entry of a ticket, and every reveal of a
+ * ticket at a location below {@value #SHARED_LOCATIONS}, is the same instance.
  */
 public final class LogEntry implements Serializable {
 	private static final long serialVersionUID = -6468835796153329259L;
 	// because Java's stupid Optional isn't intend to be used as a field...
 	private static final int HIDDEN = -1;
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int SHARED_LOCATIONS = 256;
+	private static final LogEntry[] HIDDEN_ENTRIES = new LogEntry[TICKETS.length];
+	private static final AtomicReferenceArray<LogEntry> REVEAL_ENTRIES =
+			new AtomicReferenceArray<>(TICKETS.length * SHARED_LOCATIONS);
+	static {
+		for (Ticket ticket : TICKETS) HIDDEN_ENTRIES[ticket.ordinal()] = new LogEntry(ticket, HIDDEN);
+	}
 	private final Ticket ticket;
 	private final int location;
 	/**
@@ -31,7 +41,7 @@ public final class LogEntry implements Serializable {
 	 * @return a log entry of a hidden round for Mrx
 	 */
 	public static LogEntry hidden(
-			@Nonnull Ticket ticket) { return new LogEntry(ticket, HIDDEN); }
+			@Nonnull Ticket ticket) { return HIDDEN_ENTRIES[Objects.requireNonNull(ticket).ordinal()]; }
 	/**
 	 * @param ticket the ticket used in this entry
 	 * @param location the location MrX is at during this reveal round
@@ -39,7 +49,14 @@ public final class LogEntry implements Serializable {
 	 */
 	public static LogEntry reveal(@Nonnull Ticket ticket, int location) {
 		if (location == HIDDEN) throw new IllegalArgumentException();
-		return new LogEntry(ticket, location);
+		if (location < 0 || location >= SHARED_LOCATIONS) return new LogEntry(ticket, location);
+		int slot = Objects.requireNonNull(ticket).ordinal() * SHARED_LOCATIONS + location;
+		LogEntry entry = REVEAL_ENTRIES.get(slot);
+		if (entry == null) {
+			entry = new LogEntry(ticket, location);
+			if (!REVEAL_ENTRIES.compareAndSet(slot, null, entry)) entry = REVEAL_ENTRIES.get(slot);
+		}
+		return entry;
 	}
 	private LogEntry(@Nonnull Ticket ticket, int location) {
 		this.ticket = Objects.requireNonNull(ticket);
@@ -55,6 +72,10 @@ public final class LogEntry implements Serializable {
 	public Optional<Integer> location() {
 		return location == HIDDEN ? Optional.empty() : Optional.of(location);
 	}
+	/**
+	 * @return the location in this log entry, or -1 if hidden; {@link #location()} without boxing
+	 */
+	int revealedLocation() { return location; }
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
@@ -62,4 +83,6 @@ public final class LogEntry implements Serializable {
 		return location == logEntry.location && ticket == logEntry.ticket;
 	}
 	@Override public int hashCode() { return Objects.hash(ticket, location); }
+	// deserialised entries are swapped for the shared ones
+	private Object readResolve() { return location == HIDDEN ? hidden(ticket) : reveal(ticket, location); }
 }
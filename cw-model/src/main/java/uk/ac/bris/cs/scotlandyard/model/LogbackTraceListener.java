@@ -0,0 +1,45 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+/**
+ * A {@link GameTraceListener} that routes events through SLF4J to logback.
+ * <br>
+ * New states are logged at TRACE, moves and winners at DEBUG; states are only stringified when
+ * the corresponding level is enabled.
+ */
+public final class LogbackTraceListener implements GameTraceListener {
+
+	private final Logger logger;
+
+	public LogbackTraceListener() { this(LoggerFactory.getLogger(GameTraceListener.class)); }
+
+	public LogbackTraceListener(@Nonnull Logger logger) {
+		this.logger = Objects.requireNonNull(logger);
+	}
+
+	@Override public void onStateCreated(@Nonnull GameState state) {
+		if (logger.isTraceEnabled()) logger.trace("state created: {}", state);
+	}
+
+	@Override public void onWinnerDecided(@Nonnull GameState state,
+	                                      @Nonnull ImmutableSet<Piece> winner,
+	                                      @Nonnull WinReason reason) {
+		if (logger.isDebugEnabled()) logger.debug("{} win ({}), final state: {}", winner, reason, state);
+	}
+
+	@Override public void onMoveApplied(@Nonnull GameState before,
+	                                    @Nonnull Move move,
+	                                    @Nonnull GameState after) {
+		logger.debug("move applied: {}", move);
+	}
+}
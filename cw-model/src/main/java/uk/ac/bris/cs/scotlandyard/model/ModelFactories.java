@@ -24,7 +24,9 @@ public class ModelFactories {
 					>
 			> factories() {
 		return ImmutableList.of(
-				new SimpleImmutableEntry<>(MyGameStateFactory::new, MyModelFactory::new));
+				new SimpleImmutableEntry<>(MyGameStateFactory::new, MyModelFactory::new),
+				new SimpleImmutableEntry<>(BitboardGameStateFactory::new,
+						() -> new MyModelFactory(new BitboardGameStateFactory())));
 	}
 
 
@@ -110,7 +110,12 @@ public interface Move extends Serializable {
 			return source == that.source && destination == that.destination &&
 					piece == that.piece && ticket == that.ticket;
 		}
-		@Override public int hashCode() { return Objects.hash(piece, ticket, destination); }
+		// same value as Objects.hash(piece, ticket, destination) without the varargs boxing
+		@Override public int hashCode() {
+			int result = 31 + piece.hashCode();
+			result = 31 * result + ticket.hashCode();
+			return 31 * result + destination;
+		}
 		@Override public String toString() {
 			return ticket.name() + "(" + piece + "@" + source + ", " + destination + ")";
 		}
@@ -162,8 +167,13 @@ public interface Move extends Serializable {
 					ticket1 == that.ticket1 && destination1 == that.destination1 &&
 					ticket2 == that.ticket2 && destination2 == that.destination2;
 		}
+		// same value as Objects.hash(piece, ticket1, destination1, ticket2, destination2)
 		@Override public int hashCode() {
-			return Objects.hash(piece, ticket1, destination1, ticket2, destination2);
+			int result = 31 + piece.hashCode();
+			result = 31 * result + ticket1.hashCode();
+			result = 31 * result + destination1;
+			result = 31 * result + ticket2.hashCode();
+			return 31 * result + destination2;
 		}
 		@Override public String toString() {
 			return "x2(" + piece + "@" + source + ", " + ticket1 + ", " + destination1 + ", " + ticket2 + ", " + destination2 + ")";
@@ -0,0 +1,131 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A growable buffer of {@link PackedMove} encoded moves.
+ * <br>
+ * Meant to be allocated once and reused: {@link #clear()} keeps the backing array, so a search
+ * can keep one list per ply, or share one list and {@link #truncate(int)} back to where its ply
+ * started. Not thread safe.
+ */
+public final class MoveList {
+
+	private long[] moves;
+	private int size;
+
+	public MoveList() { this(256); }
+
+	/**
+	 * @param capacity the initial capacity; the list grows as needed
+	 */
+	public MoveList(int capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("Negative capacity " + capacity);
+		this.moves = new long[capacity];
+	}
+
+	/**
+	 * @param move the packed move to append
+	 */
+	public void add(long move) {
+		if (size == moves.length) moves = Arrays.copyOf(moves, Math.max(16, size * 2));
+		moves[size++] = move;
+	}
+
+	/**
+	 * @param index the index
+	 * @return the packed move at the index
+	 */
+	public long get(int index) { return moves[Objects.checkIndex(index, size)]; }
+
+	/**
+	 * @param index the index
+	 * @param move the packed move to store at the index
+	 */
+	public void set(int index, long move) { moves[Objects.checkIndex(index, size)] = move; }
+
+	/**
+	 * Swaps two moves, for move ordering
+	 *
+	 * @param i the first index
+	 * @param j the second index
+	 */
+	public void swap(int i, int j) {
+		long move = moves[Objects.checkIndex(i, size)];
+		moves[i] = moves[Objects.checkIndex(j, size)];
+		moves[j] = move;
+	}
+
+	/**
+	 * @param move the packed move
+	 * @return true if the list contains the move
+	 */
+	public boolean contains(long move) {
+		for (int i = 0; i < size; i++) if (moves[i] == move) return true;
+		return false;
+	}
+
+	/**
+	 * @return the number of moves
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @return true if there are no moves
+	 */
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * Removes every move, keeping the capacity
+	 */
+	public void clear() { size = 0; }
+
+	/**
+	 * Removes every move from the given index onwards
+	 *
+	 * @param size the new size, no greater than the current one
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > this.size)
+			throw new IndexOutOfBoundsException("Cannot truncate " + this.size + " to " + size);
+		this.size = size;
+	}
+
+	/**
+	 * @return a copy of the packed moves
+	 */
+	@Nonnull public long[] toArray() { return Arrays.copyOf(moves, size); }
+
+	/**
+	 * @return the moves decoded with {@link PackedMove#decode(long)}
+	 */
+	@Nonnull public ImmutableSet<Move> toMoves() {
+		var builder = ImmutableSet.<Move>builderWithExpectedSize(size);
+		for (int i = 0; i < size; i++) builder.add(PackedMove.decode(moves[i]));
+		return builder.build();
+	}
+
+	/**
+	 * @param table the table to decode with
+	 * @return the moves decoded with {@link MoveTable#decode(long)}, single moves are shared
+	 */
+	@Nonnull public ImmutableSet<Move> toMoves(@Nonnull MoveTable table) {
+		var builder = ImmutableSet.<Move>builderWithExpectedSize(size);
+		for (int i = 0; i < size; i++) builder.add(table.decode(moves[i]));
+		return builder.build();
+	}
+
+	@Override public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) builder.append(", ");
+			builder.append(PackedMove.toString(moves[i]));
+		}
+		return builder.append(']').toString();
+	}
+}
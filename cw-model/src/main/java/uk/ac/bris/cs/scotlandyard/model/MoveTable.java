@@ -0,0 +1,155 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Precomputed {@link PackedMove} lists per (node, held tickets), ignoring occupancy.
+ * <br>
+ * Which single and double moves leave a node only depends on which travel tickets (taxi, bus,
+ * underground, secret) the piece has at least one of, so there are 16 lists of each kind per
+ * node. Move generation copies the list for the piece's ticket mask and drops moves onto
+ * detectives; double moves spending the same ticket twice still need a count check. Lists are
+ * built on first use and then shared; moves are encoded for MrX, see {@link #forPiece(long, int)}.
+ * <br>
+ * {@link #decode(long)} turns packed single moves into shared {@link SingleMove} instances, one
+ * per (piece, edge, ticket), so generating {@link Move}s does not allocate a move per call.
+ */
+public final class MoveTable {
+
+	private static final LoadingCache<CompiledGraph, MoveTable> CACHE =
+			CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(MoveTable::new));
+
+	private static final int MASKS = CompiledGraph.TRAVEL_SUBSETS;
+	private static final int PIECES = ScotlandYard.ALL_PIECES.size();
+	private static final int TICKETS = Ticket.values().length;
+
+	private final CompiledGraph graph;
+	private final AtomicReferenceArray<long[]> singles;
+	private final AtomicReferenceArray<long[]> doubles;
+	private final AtomicReferenceArray<SingleMove> interned;
+
+	private MoveTable(CompiledGraph graph) {
+		this.graph = graph;
+		this.singles = new AtomicReferenceArray<>(graph.size() * MASKS);
+		this.doubles = new AtomicReferenceArray<>(graph.size() * MASKS);
+		this.interned = new AtomicReferenceArray<>(graph.edges() * PIECES * TICKETS);
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the table for the graph, created once per graph
+	 */
+	@Nonnull public static MoveTable of(@Nonnull CompiledGraph graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	private static int slot(int index, int ticketMask) {
+		return index * MASKS + CompiledGraph.travelSubset(ticketMask);
+	}
+
+	/**
+	 * @param index the dense node index of the source
+	 * @param ticketMask mask of ticket ordinals held, see {@link CompiledGraph#mask(Ticket)};
+	 * the double bit is ignored
+	 * @return the single moves from the node; shared, do not modify
+	 */
+	@Nonnull public long[] singles(int index, int ticketMask) {
+		int slot = slot(index, ticketMask);
+		long[] moves = singles.get(slot);
+		if (moves == null) {
+			moves = buildSingles(index, ticketMask);
+			singles.compareAndSet(slot, null, moves);
+		}
+		return moves;
+	}
+
+	/**
+	 * @param index the dense node index of the source
+	 * @param ticketMask mask of ticket ordinals held, see {@link CompiledGraph#mask(Ticket)};
+	 * the double bit is ignored and the caller checks MrX has a double ticket
+	 * @return the double moves from the node, including those that spend the same ticket twice;
+	 * shared, do not modify
+	 */
+	@Nonnull public long[] doubles(int index, int ticketMask) {
+		int slot = slot(index, ticketMask);
+		long[] moves = doubles.get(slot);
+		if (moves == null) {
+			moves = buildDoubles(index, ticketMask);
+			doubles.compareAndSet(slot, null, moves);
+		}
+		return moves;
+	}
+
+	/**
+	 * @param move a packed move from this table
+	 * @param piece the piece index in {@link ScotlandYard#ALL_PIECES}
+	 * @return the move made by the given piece instead
+	 */
+	public static long forPiece(long move, int piece) { return move | piece; }
+
+	/**
+	 * Same as {@link PackedMove#decode(long)}, but single moves along an edge of the graph are
+	 * the same instance every time. Double moves and moves off the graph are created as usual.
+	 *
+	 * @param move the packed move
+	 * @return the move
+	 */
+	@Nonnull public Move decode(long move) {
+		if (PackedMove.isDouble(move)) return PackedMove.decode(move);
+		int from = graph.index(PackedMove.source(move));
+		int to = graph.index(PackedMove.destination(move));
+		int edge = from < 0 || to < 0 ? -1 : graph.edge(from, to);
+		if (edge < 0) return PackedMove.decode(move);
+		int slot = (edge * PIECES + PackedMove.piece(move)) * TICKETS
+				+ PackedMove.ticket1Ordinal(move);
+		SingleMove single = interned.get(slot);
+		if (single == null) {
+			single = (SingleMove) PackedMove.decode(move);
+			// keep whichever instance got there first so every caller shares one
+			if (!interned.compareAndSet(slot, null, single)) single = interned.get(slot);
+		}
+		return single;
+	}
+
+	private long[] buildSingles(int source, int ticketMask) {
+		MoveList list = new MoveList(graph.degree(source) * 2);
+		int sourceId = graph.id(source);
+		for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+			int usable = graph.tickets(e) & ticketMask;
+			for (int t = 0; t < TICKETS; t++)
+				if ((usable & (1 << t)) != 0)
+					list.add(PackedMove.single(0, sourceId, t, graph.id(graph.target(e))));
+		}
+		return list.toArray();
+	}
+
+	private long[] buildDoubles(int source, int ticketMask) {
+		MoveList list = new MoveList();
+		int sourceId = graph.id(source);
+		for (int e1 = graph.edgeStart(source); e1 < graph.edgeEnd(source); e1++) {
+			int first = graph.target(e1);
+			int usable1 = graph.tickets(e1) & ticketMask;
+			if (usable1 == 0) continue;
+			for (int e2 = graph.edgeStart(first); e2 < graph.edgeEnd(first); e2++) {
+				int usable2 = graph.tickets(e2) & ticketMask;
+				for (int t1 = 0; t1 < TICKETS; t1++) {
+					if ((usable1 & (1 << t1)) == 0) continue;
+					for (int t2 = 0; t2 < TICKETS; t2++)
+						if ((usable2 & (1 << t2)) != 0)
+							list.add(PackedMove.x2(sourceId, t1, graph.id(first),
+									t2, graph.id(graph.target(e2))));
+				}
+			}
+		}
+		return list.toArray();
+	}
+}
@@ -0,0 +1,281 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+
+/**
+ * A probability distribution over MrX's location, updated one {@link LogEntry} at a time.
+ * <br>
+ * The distribution is a dense {@code double[]} over the {@link CompiledGraph} node indices (199
+ * entries on the standard map). A hidden entry moves the mass of every node along each edge its
+ * ticket pays for (a secret ticket pays for any edge, ferries included), weighted by a
+ * {@link Behaviour}; with the default {@link Behaviour#routes()} every route counts once, so each
+ * node ends up weighted by the number of legal routes to it. A reveal collapses the distribution
+ * onto the revealed node and detective locations are zeroed, after which it is renormalised.
+ * <br>
+ * {@link #update(Board)} blocks new entries by the detectives where they stood when MrX moved, as
+ * {@link MrXLocationTracker} does, so it can be called from a detective's {@link Ai#pickMove} as
+ * well as registered as an observer.
+ * <br>
+ * {@link #observe(LogEntry, long[])}, {@link #detectivesAt(long[])} and
+ * {@link #copyFrom(MrXBelief)} never allocate, so a belief can be stepped and restored inside a
+ * search loop. Instances are not thread safe; give every searching thread its own copy.
+ */
+public final class MrXBelief implements Model.Observer {
+
+	/**
+	 * How likely MrX is to take an edge, relative to the other edges his ticket pays for.
+	 * Implementations must not allocate.
+	 */
+	@FunctionalInterface
+	public interface Behaviour {
+		/**
+		 * @param from the dense index of the node MrX leaves
+		 * @param to the dense index of the node MrX moves to
+		 * @param ticket the ordinal of the ticket used
+		 * @return a weight of at least 0
+		 */
+		double weight(int from, int to, int ticket);
+
+		/**
+		 * @return every route counts the same
+		 */
+		@Nonnull static Behaviour routes() { return (from, to, ticket) -> 1; }
+	}
+
+	private final CompiledGraph graph;
+	private final Behaviour behaviour;
+	private final double[] start;
+	private double[] probabilities;
+	private double[] scratch;
+	// the detectives' node indices at the last update, -1 if not seen
+	private final int[] seen;
+	private final long[] blocked;
+	private final long[] occupied;
+	private int applied;
+
+	/**
+	 * A belief starting uniform over {@link ScotlandYard#MRX_LOCATIONS}, with every route counting
+	 * the same.
+	 *
+	 * @param setup the game setup
+	 */
+	public MrXBelief(@Nonnull GameSetup setup) {
+		this(setup, ScotlandYard.MRX_LOCATIONS, Behaviour.routes());
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param start the nodes MrX can start from, equally likely
+	 * @param behaviour the MrX behaviour model
+	 */
+	public MrXBelief(@Nonnull GameSetup setup, @Nonnull Iterable<Integer> start,
+	                 @Nonnull Behaviour behaviour) {
+		this.graph = CompiledGraph.of(setup);
+		this.behaviour = Objects.requireNonNull(behaviour);
+		this.start = new double[graph.size()];
+		for (int id : start) {
+			int index = graph.index(id);
+			if (index < 0) throw new IllegalArgumentException("Node " + id + " is not on the graph");
+			this.start[index] = 1;
+		}
+		normalise(this.start);
+		this.probabilities = this.start.clone();
+		this.scratch = new double[graph.size()];
+		this.seen = new int[Detective.values().length];
+		Arrays.fill(seen, -1);
+		this.blocked = new long[graph.words()];
+		this.occupied = new long[graph.words()];
+	}
+
+	/**
+	 * @param other the belief to copy
+	 * @return a new belief in the same state as {@code other}
+	 */
+	@Nonnull public static MrXBelief copyOf(@Nonnull MrXBelief other) {
+		return new MrXBelief(other);
+	}
+
+	private MrXBelief(MrXBelief other) {
+		this.graph = other.graph;
+		this.behaviour = other.behaviour;
+		this.start = other.start;
+		this.probabilities = other.probabilities.clone();
+		this.scratch = new double[graph.size()];
+		this.seen = other.seen.clone();
+		this.blocked = new long[graph.words()];
+		this.occupied = new long[graph.words()];
+		this.applied = other.applied;
+	}
+
+	/**
+	 * Overwrites this belief with another one for the same graph.
+	 *
+	 * @param other the belief to copy
+	 */
+	public void copyFrom(@Nonnull MrXBelief other) {
+		if (other.graph != graph) throw new IllegalArgumentException("Belief is for another graph");
+		System.arraycopy(other.probabilities, 0, probabilities, 0, probabilities.length);
+		System.arraycopy(other.seen, 0, seen, 0, seen.length);
+		applied = other.applied;
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		update(board);
+	}
+
+	/**
+	 * Observes the log entries appended since the last update, blocked by the detectives that have
+	 * not moved since MrX did, and the detectives' current locations. A log shorter than the one
+	 * already observed means a new game, which restarts from the starting distribution.
+	 *
+	 * @param board the board
+	 */
+	public void update(@Nonnull Board board) {
+		var log = board.getMrXTravelLog();
+		if (log.size() < applied) {
+			System.arraycopy(start, 0, probabilities, 0, probabilities.length);
+			Arrays.fill(seen, -1);
+			applied = 0;
+		}
+		MrXLocationTracker.readDetectives(graph, board, seen, blocked, occupied);
+		while (applied < log.size()) observe(log.get(applied), blocked);
+		detectivesAt(occupied);
+	}
+
+	/**
+	 * Moves the distribution by one entry of MrX's travel log.
+	 *
+	 * @param entry the log entry
+	 * @param blocked the detective occupancy when MrX moved, as a bitset over dense node indices;
+	 * may be null
+	 */
+	public void observe(@Nonnull LogEntry entry, @Nullable long[] blocked) {
+		applied++;
+		int revealed = entry.revealedLocation();
+		if (revealed >= 0) {
+			Arrays.fill(probabilities, 0);
+			int index = graph.index(revealed);
+			if (index >= 0) probabilities[index] = 1;
+			return;
+		}
+		int ticket = entry.ticket().ordinal();
+		int mask = 1 << ticket;
+		Arrays.fill(scratch, 0);
+		for (int from = 0; from < probabilities.length; from++) {
+			double p = probabilities[from];
+			if (p == 0) continue;
+			for (int e = graph.edgeStart(from); e < graph.edgeEnd(from); e++) {
+				int to = graph.target(e);
+				if ((graph.tickets(e) & mask) == 0
+						|| blocked != null && (blocked[to >>> 6] & (1L << to)) != 0) continue;
+				scratch[to] += p * behaviour.weight(from, to, ticket);
+			}
+		}
+		double[] swap = probabilities;
+		probabilities = scratch;
+		scratch = swap;
+		normalise(probabilities);
+	}
+
+	/**
+	 * Zeroes the nodes held by detectives and renormalises.
+	 *
+	 * @param occupancy the detective occupancy as a bitset over dense node indices
+	 */
+	public void detectivesAt(@Nonnull long[] occupancy) {
+		for (int w = 0; w < occupancy.length; w++) {
+			long bits = occupancy[w];
+			while (bits != 0) {
+				int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+				if (index < probabilities.length) probabilities[index] = 0;
+				bits &= bits - 1;
+			}
+		}
+		normalise(probabilities);
+	}
+
+	// scales to a sum of 1; an empty distribution, where the log contradicts the board, stays empty
+	private static void normalise(double[] distribution) {
+		double total = 0;
+		for (double p : distribution) total += p;
+		if (total == 0 || total == 1) return;
+		for (int i = 0; i < distribution.length; i++) distribution[i] /= total;
+	}
+
+	/**
+	 * @return the graph the node indices are for
+	 */
+	@Nonnull public CompiledGraph graph() { return graph; }
+
+	/**
+	 * @return the number of log entries observed so far
+	 */
+	public int applied() { return applied; }
+
+	/**
+	 * @param index a dense node index
+	 * @return the probability that MrX is at the node
+	 */
+	public double probability(int index) { return probabilities[index]; }
+
+	/**
+	 * @param location a node id
+	 * @return the probability that MrX is at the node, 0 for nodes not on the graph
+	 */
+	public double probabilityOf(int location) {
+		int index = graph.index(location);
+		return index < 0 ? 0 : probabilities[index];
+	}
+
+	/**
+	 * @param out receives the probabilities by dense node index; at least {@code graph().size()}
+	 * long
+	 */
+	public void copyTo(@Nonnull double[] out) {
+		System.arraycopy(probabilities, 0, out, 0, probabilities.length);
+	}
+
+	/**
+	 * @return whether no node is possible, which means the observations contradict each other
+	 */
+	public boolean isEmpty() {
+		for (double p : probabilities) if (p != 0) return false;
+		return true;
+	}
+
+	/**
+	 * @return the dense index of the most likely node, the lowest on ties; -1 if empty
+	 */
+	public int mostLikely() {
+		int best = -1;
+		for (int i = 0; i < probabilities.length; i++)
+			if (probabilities[i] > 0 && (best < 0 || probabilities[i] > probabilities[best])) best = i;
+		return best;
+	}
+
+	/**
+	 * @param random the random source
+	 * @return the dense index of a node drawn from the distribution
+	 * @throws IllegalStateException if the distribution is empty
+	 */
+	public int sample(@Nonnull SplittableRandom random) {
+		double target = random.nextDouble();
+		int last = -1;
+		for (int i = 0; i < probabilities.length; i++) {
+			if (probabilities[i] == 0) continue;
+			target -= probabilities[i];
+			last = i;
+			if (target < 0) return i;
+		}
+		// rounding can leave a sliver past the end
+		if (last < 0) throw new IllegalStateException("Belief is empty");
+		return last;
+	}
+}
@@ -0,0 +1,178 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+
+/**
+ * Keeps the nodes MrX can be at given what the detectives see: his travel log and their own
+ * locations.
+ * <br>
+ * Starting from his possible starting locations, every hidden log entry moves the candidates one
+ * step along the edges its ticket pays for (a secret ticket pays for any edge, ferries included)
+ * and a reveal round resets them to the revealed node. Nodes held by detectives are removed, both
+ * while expanding and after every update. Only the log entries appended since the last update are
+ * applied, with one {@link ReachabilityEngine#expand} each, so an update costs the size of the
+ * candidate set rather than a replay of the game.
+ * <br>
+ * New entries are expanded around the detectives where they stood when MrX moved: those still to
+ * move on the board, and those on the node the previous update saw them on. Detectives that have
+ * moved since MrX did block nothing while expanding and only remove the nodes they are on now, so
+ * the candidates always hold MrX's real location. They are exact when every update sees the board
+ * before any detective moves after MrX, as an observer does and as a detective's
+ * {@link Ai#pickMove} does on the first detective's turn; if whole rounds are missed, the entries
+ * caught up on are all expanded around the same detectives, which is an approximation.
+ * <br>
+ * Register the tracker with {@link Model#registerObserver(Model.Observer)} or call
+ * {@link #update(Board)} with every board seen, for example from {@link Ai#pickMove}. Updates are
+ * serialised; the read methods never block and always see a complete update.
+ */
+public final class MrXLocationTracker implements Model.Observer {
+
+	private final GameSetup setup;
+	private final CompiledGraph graph;
+	private final ReachabilityEngine engine;
+	private final long[] start;
+
+	// guarded by this
+	private long[] candidates;
+	private int applied;
+	// the detectives' node indices at the last update, -1 if not seen
+	private final int[] seen;
+	private final long[] blocked;
+	private final long[] occupied;
+	private volatile long[] published;
+
+	/**
+	 * Tracks MrX starting from any of {@link ScotlandYard#MRX_LOCATIONS}.
+	 *
+	 * @param setup the game setup
+	 */
+	public MrXLocationTracker(@Nonnull GameSetup setup) {
+		this(setup, ScotlandYard.MRX_LOCATIONS);
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param start the nodes MrX can start from
+	 */
+	public MrXLocationTracker(@Nonnull GameSetup setup, @Nonnull Iterable<Integer> start) {
+		this.setup = Objects.requireNonNull(setup);
+		this.graph = CompiledGraph.of(setup);
+		this.engine = ReachabilityEngine.of(graph);
+		this.start = engine.bitsOf(start);
+		this.candidates = this.start.clone();
+		this.seen = new int[Detective.values().length];
+		Arrays.fill(seen, -1);
+		this.blocked = new long[graph.words()];
+		this.occupied = new long[graph.words()];
+		this.published = this.start.clone();
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		update(board);
+	}
+
+	/**
+	 * Applies the log entries appended since the last update, blocked by the detectives that have
+	 * not moved since MrX did, and removes the nodes the detectives are at now. A log shorter than
+	 * the one already applied means a new game, which restarts the tracking.
+	 *
+	 * @param board the board
+	 */
+	public synchronized void update(@Nonnull Board board) {
+		if (board.getSetup().graph != setup.graph)
+			throw new IllegalArgumentException("Board is for a different game setup");
+		var log = board.getMrXTravelLog();
+		if (log.size() < applied) {
+			candidates = start.clone();
+			Arrays.fill(seen, -1);
+			applied = 0;
+		}
+		readDetectives(graph, board, seen, blocked, occupied);
+		long[] next = new long[graph.words()];
+		for (; applied < log.size(); applied++) {
+			LogEntry entry = log.get(applied);
+			if (entry.location().isPresent()) {
+				candidates = engine.bitsOf(ImmutableSet.of(entry.location().get()));
+			} else {
+				engine.expand(candidates, CompiledGraph.mask(entry.ticket()), blocked, next);
+				long[] swap = candidates;
+				candidates = next;
+				next = swap;
+			}
+		}
+		for (int w = 0; w < candidates.length; w++) candidates[w] &= ~occupied[w];
+		published = candidates.clone();
+	}
+
+	/**
+	 * Reads the detectives' nodes off a board, now and when MrX last moved. A detective still to
+	 * move, or on the node the previous read saw it on, has not moved since MrX did; the others
+	 * have, and are left out of the nodes when MrX moved as those are not known.
+	 *
+	 * @param graph the compiled graph
+	 * @param board the board
+	 * @param seen each detective's node index at the previous read, -1 if unknown; updated to now
+	 * @param atMrXMove receives the nodes of the detectives that have not moved since MrX did
+	 * @param now receives the nodes of every detective
+	 */
+	static void readDetectives(CompiledGraph graph, Board board, int[] seen, long[] atMrXMove,
+	                           long[] now) {
+		int remaining = 0;
+		for (Move move : board.getAvailableMoves())
+			if (move.commencedBy().isDetective())
+				remaining |= 1 << ((Detective) move.commencedBy()).ordinal();
+		Arrays.fill(atMrXMove, 0);
+		Arrays.fill(now, 0);
+		// asks for every detective rather than getPlayers(), which may only hold those yet to move
+		for (Detective detective : Detective.values()) {
+			int ordinal = detective.ordinal();
+			int index = board.getDetectiveLocation(detective).map(graph::index).orElse(-1);
+			if (index >= 0) {
+				now[index >>> 6] |= 1L << index;
+				if ((remaining & (1 << ordinal)) != 0 || seen[ordinal] == index)
+					atMrXMove[index >>> 6] |= 1L << index;
+			}
+			seen[ordinal] = index;
+		}
+	}
+
+	/**
+	 * @return the number of log entries applied so far
+	 */
+	public synchronized int applied() { return applied; }
+
+	/**
+	 * @return the ids of the nodes MrX can be at
+	 */
+	@Nonnull public ImmutableSet<Integer> candidates() { return engine.idsOf(published); }
+
+	/**
+	 * @return a copy of the candidates as a bitset over {@link CompiledGraph} node indices
+	 */
+	@Nonnull public long[] candidateBits() { return published.clone(); }
+
+	/**
+	 * @return the number of nodes MrX can be at
+	 */
+	public int count() {
+		int count = 0;
+		for (long word : published) count += Long.bitCount(word);
+		return count;
+	}
+
+	/**
+	 * @param location a node id
+	 * @return whether MrX can be at the node
+	 */
+	public boolean contains(int location) {
+		int index = graph.index(location);
+		return index >= 0 && (published[index >>> 6] & (1L << index)) != 0;
+	}
+}
@@ -0,0 +1,456 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.DETECTIVES_WIN;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.MRX_BIT;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.MRX_WINS;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.NO_WINNER;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.PIECES;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.TICKETS;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.clear;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.movableDetectives;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.ordinal;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.set;
+
+/**
+ * A game state for tree search that is updated in place.
+ * <br>
+ * {@link #make(long)} applies a {@link PackedMove} and {@link #unmake()} takes back the last one,
+ * so a search walks the tree with a single instance and no per-node garbage. Moves, winners and
+ * the turn order follow the same rules as {@link Board.GameState#advance(Move)}, including the
+ * detective's ticket going to MrX. Uses the packed representation of
+ * {@link BitboardGameStateFactory}; pieces are identified by their index in
+ * {@link ScotlandYard#ALL_PIECES}.
+ * <br>
+ * Every position carries an incrementally updated {@link Zobrist} {@link #key()} for
+ * transposition detection.
+ * <br>
+ * Not thread safe, give every search thread its own {@link #copy()}.
+ */
+public final class MutableSearchState implements PackedMove.Generator {
+
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final Ticket[] TICKET_VALUES = Ticket.values();
+
+	private final GameSetup setup;
+	private final CompiledGraph graph;
+	private final Zobrist zobrist;
+	private final boolean[] reveals;
+	private final int detectiveMask;
+
+	private final short[] locations;
+	private final int[] tickets;
+	private final long[] occupancy;
+	private final byte[] logTickets;
+	private final int[] logLocations;
+	private int round;
+	private int remaining;
+	private byte winner;
+	private long key;
+
+	// undo stack, one entry per make()
+	private long[] history;
+	private int[] historyRemaining;
+	private byte[] historyWinner;
+	private long[] historyKey;
+	private int ply;
+
+	private MutableSearchState(GameSetup setup, int detectiveMask, short[] locations,
+	                           int[] tickets, int round) {
+		this.setup = setup;
+		this.graph = CompiledGraph.of(setup);
+		this.zobrist = Zobrist.of(graph);
+		this.reveals = new boolean[setup.moves.size()];
+		for (int i = 0; i < reveals.length; i++) reveals[i] = setup.moves.get(i);
+		this.detectiveMask = detectiveMask;
+		this.locations = locations;
+		this.tickets = tickets;
+		this.occupancy = new long[graph.words()];
+		for (int piece = 1; piece < PIECES; piece++)
+			if (locations[piece] >= 0) set(occupancy, locations[piece]);
+		this.logTickets = new byte[reveals.length + 1];
+		this.logLocations = new int[reveals.length + 1];
+		this.round = round;
+		this.history = new long[32];
+		this.historyRemaining = new int[32];
+		this.historyWinner = new byte[32];
+		this.historyKey = new long[32];
+	}
+
+	private MutableSearchState(MutableSearchState that) {
+		this.setup = that.setup;
+		this.graph = that.graph;
+		this.zobrist = that.zobrist;
+		this.reveals = that.reveals;
+		this.detectiveMask = that.detectiveMask;
+		this.locations = that.locations.clone();
+		this.tickets = that.tickets.clone();
+		this.occupancy = that.occupancy.clone();
+		this.logTickets = that.logTickets.clone();
+		this.logLocations = that.logLocations.clone();
+		this.round = that.round;
+		this.remaining = that.remaining;
+		this.winner = that.winner;
+		this.key = that.key;
+		this.history = that.history.clone();
+		this.historyRemaining = that.historyRemaining.clone();
+		this.historyWinner = that.historyWinner.clone();
+		this.historyKey = that.historyKey.clone();
+		this.ply = that.ply;
+	}
+
+	/**
+	 * Creates a search state from a board where MrX is to move, his location is taken from the
+	 * source of his available moves
+	 *
+	 * @param board the board
+	 * @return a search state equal to the board
+	 * @throws IllegalArgumentException if MrX's location cannot be worked out from the board
+	 */
+	@Nonnull public static MutableSearchState of(@Nonnull Board board) {
+		int mrXLocation = board.getAvailableMoves().stream()
+				.filter(move -> move.commencedBy().isMrX())
+				.mapToInt(Move::source)
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException(
+						"MrX's location is not known on this board, use of(board, location)"));
+		return of(board, mrXLocation);
+	}
+
+	/**
+	 * Creates a search state from any board, for example one seen by the detectives where MrX's
+	 * location is a guess
+	 *
+	 * @param board the board
+	 * @param mrXLocation the node id to place MrX on
+	 * @return a search state equal to the board with MrX at the given location
+	 */
+	@Nonnull public static MutableSearchState of(@Nonnull Board board, int mrXLocation) {
+		Objects.requireNonNull(board);
+		GameSetup setup = board.getSetup();
+		CompiledGraph graph = CompiledGraph.of(setup);
+		short[] locations = new short[PIECES];
+		Arrays.fill(locations, (short) -1);
+		int[] tickets = new int[PIECES * TICKETS];
+		int detectiveMask = 0;
+
+		locations[MRX] = (short) checkedIndex(graph, mrXLocation);
+		readTickets(board, Piece.MrX.MRX, MRX, tickets);
+		for (Detective detective : Detective.values()) {
+			int location = board.getDetectiveLocation(detective).orElse(-1);
+			if (location < 0) continue;
+			int piece = ordinal(detective);
+			locations[piece] = (short) checkedIndex(graph, location);
+			readTickets(board, detective, piece, tickets);
+			detectiveMask |= 1 << piece;
+		}
+
+		var log = board.getMrXTravelLog();
+		MutableSearchState state =
+				new MutableSearchState(setup, detectiveMask, locations, tickets, log.size());
+		for (int i = 0; i < log.size(); i++) {
+			state.logTickets[i] = (byte) log.get(i).ticket().ordinal();
+			state.logLocations[i] = log.get(i).location().orElse(-1);
+		}
+		int remaining = 0;
+		for (Move move : board.getAvailableMoves())
+			remaining |= 1 << ordinal(move.commencedBy());
+		state.remaining = remaining == 0 ? MRX_BIT : remaining;
+		state.winner = state.computeWinner();
+		state.key = state.computeKey();
+		return state;
+	}
+
+	private static int checkedIndex(CompiledGraph graph, int location) {
+		int index = graph.index(location);
+		if (index < 0) throw new IllegalArgumentException(location + " is not on the graph");
+		return index;
+	}
+
+	private static void readTickets(Board board, Piece piece, int ordinal, int[] tickets) {
+		board.getPlayerTickets(piece).ifPresent(ticketBoard -> {
+			for (Ticket ticket : TICKET_VALUES)
+				tickets[ordinal * TICKETS + ticket.ordinal()] = ticketBoard.getCount(ticket);
+		});
+	}
+
+	/**
+	 * @return an independent copy, including the undo history
+	 */
+	@Nonnull public MutableSearchState copy() { return new MutableSearchState(this); }
+
+	/**
+	 * Applies a move. The move must be one of the moves {@link #generate(MoveList)} gives for
+	 * the current position; this is not checked.
+	 *
+	 * @param move the packed move
+	 */
+	public void make(long move) {
+		if (ply == history.length) {
+			history = Arrays.copyOf(history, ply * 2);
+			historyRemaining = Arrays.copyOf(historyRemaining, ply * 2);
+			historyWinner = Arrays.copyOf(historyWinner, ply * 2);
+			historyKey = Arrays.copyOf(historyKey, ply * 2);
+		}
+		history[ply] = move;
+		historyRemaining[ply] = remaining;
+		historyWinner[ply] = winner;
+		historyKey[ply] = key;
+		ply++;
+		key ^= zobrist.round(round) ^ zobrist.turn(remaining);
+
+		int piece = PackedMove.piece(move);
+		int destination = graph.index(PackedMove.destination(move));
+		int ticket = PackedMove.ticket1Ordinal(move);
+		int turn;
+		key ^= zobrist.location(piece, locations[piece]) ^ zobrist.location(piece, destination);
+		if (piece == MRX) {
+			adjust(MRX, ticket, -1);
+			if (PackedMove.isDouble(move)) {
+				int second = PackedMove.ticket2Ordinal(move);
+				adjust(MRX, second, -1);
+				adjust(MRX, DOUBLE, -1);
+				log(ticket, PackedMove.destination1(move));
+				log(second, PackedMove.destination(move));
+			} else log(ticket, PackedMove.destination(move));
+			locations[MRX] = (short) destination;
+			turn = detectiveMask;
+		} else {
+			clear(occupancy, locations[piece]);
+			set(occupancy, destination);
+			locations[piece] = (short) destination;
+			adjust(piece, ticket, -1);
+			adjust(MRX, ticket, +1);
+			turn = remaining & ~(1 << piece);
+		}
+		int movable = movableDetectives(graph, locations, tickets, occupancy, detectiveMask);
+		remaining = BitboardGameStateFactory.remaining(turn, movable);
+		winner = BitboardGameStateFactory.winner(graph, locations, tickets, occupancy,
+				movable, remaining, reveals.length - round);
+		key ^= zobrist.round(round) ^ zobrist.turn(remaining);
+	}
+
+	private void adjust(int piece, int ticket, int delta) {
+		int index = piece * TICKETS + ticket;
+		key ^= zobrist.tickets(piece, ticket, tickets[index])
+				^ zobrist.tickets(piece, ticket, tickets[index] + delta);
+		tickets[index] += delta;
+	}
+
+	/**
+	 * Applies a move, see {@link #make(long)}
+	 *
+	 * @param move the move
+	 */
+	public void make(@Nonnull Move move) { make(PackedMove.encode(move)); }
+
+	/**
+	 * Takes back the last move made
+	 *
+	 * @throws IllegalStateException if there is no move to take back
+	 */
+	public void unmake() {
+		if (ply == 0) throw new IllegalStateException("No move to unmake");
+		ply--;
+		long move = history[ply];
+		int piece = PackedMove.piece(move);
+		int source = graph.index(PackedMove.source(move));
+		int ticket = PackedMove.ticket1Ordinal(move);
+		if (piece == MRX) {
+			tickets[ticket]++;
+			if (PackedMove.isDouble(move)) {
+				tickets[PackedMove.ticket2Ordinal(move)]++;
+				tickets[DOUBLE]++;
+				round -= 2;
+			} else round--;
+			locations[MRX] = (short) source;
+		} else {
+			clear(occupancy, locations[piece]);
+			set(occupancy, source);
+			locations[piece] = (short) source;
+			tickets[piece * TICKETS + ticket]++;
+			tickets[MRX * TICKETS + ticket]--;
+		}
+		remaining = historyRemaining[ply];
+		winner = historyWinner[ply];
+		key = historyKey[ply];
+	}
+
+	private void log(int ticket, int location) {
+		logTickets[round] = (byte) ticket;
+		logLocations[round] = location;
+		round++;
+	}
+
+	private long computeKey() {
+		long key = zobrist.round(round) ^ zobrist.turn(remaining);
+		for (int piece = 0; piece < PIECES; piece++) {
+			if (locations[piece] < 0) continue;
+			key ^= zobrist.location(piece, locations[piece]);
+			for (int ticket = 0; ticket < TICKETS; ticket++)
+				key ^= zobrist.tickets(piece, ticket, tickets[piece * TICKETS + ticket]);
+		}
+		return key;
+	}
+
+	private byte computeWinner() {
+		int movable = movableDetectives(graph, locations, tickets, occupancy, detectiveMask);
+		return BitboardGameStateFactory.winner(graph, locations, tickets, occupancy,
+				movable, remaining, reveals.length - round);
+	}
+
+	@Override public int generate(@Nonnull MoveList out) {
+		if (winner != NO_WINNER) return 0;
+		return BitboardGameStateFactory.generate(graph, locations, tickets, occupancy,
+				remaining, reveals.length - round, out);
+	}
+
+	/**
+	 * @return the setup of the game
+	 */
+	@Nonnull public GameSetup getSetup() { return setup; }
+
+	/**
+	 * @return the compiled graph, dense indices returned by {@link #locationIndex(int)} refer to it
+	 */
+	@Nonnull public CompiledGraph graph() { return graph; }
+
+	/**
+	 * @return the Zobrist key of the position: locations, ticket counts, round and the pieces
+	 * still to move. Positions reached through different move orders share a key.
+	 */
+	public long key() { return key; }
+
+	/**
+	 * @return the key recomputed from scratch, equal to {@link #key()}; for testing
+	 */
+	long recomputeKey() { return computeKey(); }
+
+	/**
+	 * @return the number of moves made since this state was created
+	 */
+	public int ply() { return ply; }
+
+	/**
+	 * @return the number of entries in MrX's travel log
+	 */
+	public int round() { return round; }
+
+	/**
+	 * @return true if MrX is the one to move
+	 */
+	public boolean isMrXTurn() { return remaining == MRX_BIT; }
+
+	/**
+	 * @return bit mask of piece indices that can still move this turn
+	 */
+	public int remaining() { return remaining; }
+
+	/**
+	 * @return bit mask of piece indices of the detectives in the game
+	 */
+	public int detectives() { return detectiveMask; }
+
+	/**
+	 * @return true if the game has a winner
+	 */
+	public boolean isGameOver() { return winner != NO_WINNER; }
+
+	/**
+	 * @return true if MrX has won
+	 */
+	public boolean mrXWins() { return winner == MRX_WINS; }
+
+	/**
+	 * @return true if the detectives have won
+	 */
+	public boolean detectivesWin() { return winner == DETECTIVES_WIN; }
+
+	/**
+	 * @param piece the piece index
+	 * @return the dense {@link CompiledGraph} index of the piece; -1 if not in the game
+	 */
+	public int locationIndex(int piece) { return locations[piece]; }
+
+	/**
+	 * @param piece the piece
+	 * @return the node id of the piece, MrX's true location included; -1 if not in the game
+	 */
+	public int location(@Nonnull Piece piece) {
+		int ordinal = ordinal(piece);
+		int index = ordinal < 0 ? -1 : locations[ordinal];
+		return index < 0 ? -1 : graph.id(index);
+	}
+
+	/**
+	 * @param piece the piece index
+	 * @param ticket the ticket ordinal
+	 * @return the number of tickets held
+	 */
+	public int ticketCount(int piece, int ticket) { return tickets[piece * TICKETS + ticket]; }
+
+	/**
+	 * @param piece the piece
+	 * @param ticket the ticket
+	 * @return the number of tickets held; 0 if the piece is not in the game
+	 */
+	public int ticketCount(@Nonnull Piece piece, @Nonnull Ticket ticket) {
+		int ordinal = ordinal(piece);
+		return ordinal < 0 ? 0 : tickets[ordinal * TICKETS + ticket.ordinal()];
+	}
+
+	/**
+	 * @param round the travel log index
+	 * @return true if MrX is revealed on that round
+	 */
+	public boolean isRevealRound(int round) { return reveals[round]; }
+
+	/**
+	 * @param round the travel log index, less than {@link #round()}
+	 * @return the ticket ordinal MrX used
+	 */
+	public int logTicket(int round) { return logTickets[Objects.checkIndex(round, this.round)]; }
+
+	/**
+	 * @param round the travel log index, less than {@link #round()}
+	 * @return the node id MrX moved to, including hidden rounds played on this state; -1 if the
+	 * location was hidden on the board this state was created from
+	 */
+	public int logLocation(int round) {
+		return logLocations[Objects.checkIndex(round, this.round)];
+	}
+
+	/**
+	 * @param round the travel log index, less than {@link #round()}
+	 * @return the entry as it appears in {@link Board#getMrXTravelLog()}
+	 */
+	@Nonnull public LogEntry logEntry(int round) {
+		Ticket ticket = TICKET_VALUES[logTicket(round)];
+		return reveals[round]
+				? LogEntry.reveal(ticket, logLocations[round])
+				: LogEntry.hidden(ticket);
+	}
+
+	@Override public String toString() {
+		StringBuilder builder = new StringBuilder("MutableSearchState{round=").append(round)
+				.append(", ply=").append(ply)
+				.append(", remaining=").append(Integer.toBinaryString(remaining))
+				.append(", winner=").append(winner);
+		for (int piece = 0; piece < PIECES; piece++) {
+			if (locations[piece] < 0) continue;
+			builder.append(", ").append(ScotlandYard.ALL_PIECES.get(piece))
+					.append('@').append(graph.id(locations[piece]))
+					.append(Arrays.toString(Arrays.copyOfRange(tickets,
+							piece * TICKETS, (piece + 1) * TICKETS)));
+		}
+		return builder.append('}').toString();
+	}
+}
@@ -6,16 +6,15 @@ import com.google.common.collect.ImmutableList;
 
 import javax.annotation.Nonnull;
 
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameTraceListener.WinReason;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
 import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
 import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
 import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
-import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
 
 import java.util.*;
 
@@ -26,6 +25,15 @@ import java.util.*;
 
 //用 final 修饰，说明它们一旦设定就不能改了（immutable）
 public final class MyGameStateFactory implements Factory<GameState> {
+
+	private final GameTraceListener trace;
+
+	public MyGameStateFactory() { this(GameTraceListener.NONE); }
+
+	// every state built by this factory reports to the given listener, see GameTraceListener
+	public MyGameStateFactory(GameTraceListener trace) {
+		this.trace = Objects.requireNonNull(trace);
+	}
 /*
 	这段是在实现Factory接口，接口中规定必须创建一个gamestate类型的对象，MyGameStateFactory
 	这个类实现了接口，	实例化了GameState，GameState extends Board并且增加了一个advance方法
@@ -46,7 +54,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			GameSetup setup,
 			Player mrX,
 			ImmutableList<Player> detectives) {
-		return new MyGameState(setup, mrX, detectives);
+		return new MyGameState(setup, mrX, detectives, trace);
 	}
 
 
@@ -62,25 +70,38 @@ public final class MyGameStateFactory implements Factory<GameState> {
 	MyGameState这个类是实现gamestate接口的，gamestate接口又是board接口的extend
  */
 	private static final class MyGameState implements GameState {
+		private static final Ticket[] TICKETS = Ticket.values();
 		private final GameSetup setup; //保存了游戏的初始设置move和graph那个
+		private final CompiledGraph graph; // setup.graph in primitive form for move generation
+		private final MoveTable moveTable; // packed moves per (node, held tickets), see MoveTable
 		private final ImmutableSet<Piece> remaining; //仍然可移动的玩家
 		// 有一个可移动玩家列表，每个列表中的元素都是piece类的有颜色和身份信息isdetective（）
-		private final ImmutableList<LogEntry> log; // MrX's travel log
+		private final TravelLog log; // MrX's travel log, appending shares the prefix
 	// 当前回合x的行动（是否隐藏）组成的列表，每个元素是LogEntry type
 
-		ImmutableMap<Piece, ImmutableSet<Move>> movesMap;
-	// 保存每个玩家（Piece）的合法移动。movesMap 将每个玩家与他们的合法移动集合关联起来。比如：mrX 可能有 Single 或 Double
+		// Memoised move sets. Each is computed the first time it is asked for and never changes
+		// afterwards, so the fields are plain: a thread racing on a fresh state may compute an
+		// equal immutable set again, but never sees a partly built one.
+		private ImmutableSet<Move>[] movesCache; // per piece, see slot(); allocated on first use
+	// 保存每个玩家（Piece）的合法移动，第一次需要时才计算（lazy），之后直接从缓存里取
+		private ImmutableSet<Move> availableMoves; // getAvailableMoves() 的缓存
 		private final ImmutableSet<Piece> winner; // Current winner of the game
+		private final WinReason winReason; // why the game ended, null while it is still running
+		private final GameTraceListener trace; // receives state/winner/move events, see GameTraceListener
 		private final int currentRound; // Current round number
 		private final Player mrXPlayer;
 		//piece是棋子，player是每个玩家，每个玩家都有一个棋子
 		private final ImmutableList<Player> detectivePlayers;
+		// bitset over dense node indices of where the detectives stand; shared between states
+		// until a detective moves, never modified after construction
+		private final long[] occupancy;
 	// 所有侦探玩家的列表
 
 
 //这段是MyGameState类的构造函数，有一系列的异常检查来确定传递的参数是不是异常，setup，mrX，detectives
 // 是在构造时要输入，其他是内部进行生成
-		private MyGameState(GameSetup setup, Player mrX, ImmutableList<Player> detectives) {
+		private MyGameState(GameSetup setup, Player mrX, ImmutableList<Player> detectives,
+		                    GameTraceListener trace) {
 
 			//检查setup，mrX，detectives是不是空，如果空就报错
 			if (setup == null || mrX == null || detectives == null)
@@ -108,36 +129,40 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			}
 
 			this.setup = setup;
+			this.graph = CompiledGraph.of(setup);
+			this.moveTable = MoveTable.of(graph);
+			this.trace = trace;
 			this.mrXPlayer = mrX;
 			this.detectivePlayers = detectives;
+			this.occupancy = occupancyOf(graph, detectives);
 			this.remaining = ImmutableSet.of(mrX.piece());
 			//最开始只有mrX可以动
 
 			this.currentRound = 0;
-			this.log = ImmutableList.of();    // Log is empty at the beginning
+			this.log = TravelLog.empty();    // Log is empty at the beginning
 			//Google Guava 库中的一个方法，用于创建一个空的不可变列表，ImmutableList无法在其上添加、删除或修改元素
 
-			this.movesMap  = buildMovesMap();
-			//负责生成每个玩家的可用移动，是在MyGameState的方法，现在还没写，在下面helper里
-
-			this.winner = calculateWinner(this);  // Determine winner based on conditions
-			if(!winner.isEmpty()){
-				System.out.println("mrX win in init step");
-				this.movesMap  = ImmutableMap.of();
-			}
-
-
+			// moves are generated lazily by movesFor(), see getAvailableMoves()
+			this.winReason = calculateWinner(this);  // Determine winner based on conditions
+			this.winner = winnerFor(winReason);
+			traceCreated();
 		}
 
 //有两个构造函数，根据传递参数的不同来确定用哪个（Constructor Overloading，这个自由度更高
+		// decided may be null, in which case the winner is worked out from the new state itself;
+		// graph and moveTable are the parent state's, so advancing never looks them up
 		private MyGameState(
 				GameSetup setup,
+				CompiledGraph graph,
+				MoveTable moveTable,
 				Player mrX,
 				ImmutableList<Player> detectives,
+				long[] occupancy,
 				int currentRound,
-				ImmutableList<LogEntry> log,
-				ImmutableSet<Piece> winner,
-				ImmutableSet<Piece> remaining
+				TravelLog log,
+				WinReason decided,
+				ImmutableSet<Piece> remaining,
+				GameTraceListener trace
 		) {
 
 			// Parameter check
@@ -145,29 +170,32 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				throw new NullPointerException("NullPointer in MyGameState constructor");
 			if (setup.moves.isEmpty() || setup.graph.nodes().isEmpty())
 				throw new IllegalArgumentException("Invalid setup: empty moves or graph");
-			Set<Integer> detectiveLocations = new HashSet<>();
+			// two detectives on one node is caught when the occupancy is updated, see moveDetective
 			for (Player d : detectives) {
 				if (d.has(Ticket.DOUBLE) || d.has(Ticket.SECRET)) {
 					throw new IllegalArgumentException("Detectives cannot hold DOUBLE or SECRET tickets");
 				}
-				if (!detectiveLocations.add(d.location())) {
-					throw new IllegalArgumentException("Two detectives in same location!");
-				}
 			}
 
 			this.setup = setup;
+			this.graph = graph;
+			this.moveTable = moveTable;
+			this.trace = trace;
 			this.mrXPlayer = mrX;
 			this.detectivePlayers = detectives;
+			this.occupancy = occupancy;
 			this.currentRound = currentRound;
 			this.log = log;
-			this.winner = winner;
 			this.remaining = remaining;
+			this.winReason = decided != null ? decided : calculateWinner(this);
+			this.winner = winnerFor(winReason);
+			traceCreated();
+		}
 
-			if (!winner.isEmpty()) {
-				this.movesMap  = ImmutableMap.of();
-			} else {
-				this.movesMap  = buildMovesMap();
-			}
+		// with GameTraceListener.NONE these calls inline away to nothing
+		private void traceCreated() {
+			trace.onStateCreated(this);
+			if (winReason != null) trace.onWinnerDecided(this, winner, winReason);
 		}
 
 /*
@@ -217,7 +245,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		@Nonnull
 		@Override
 		public ImmutableList<LogEntry> getMrXTravelLog() {
-			return log;
+			return log.asImmutableList();
 		}
 
 
@@ -229,15 +257,15 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		//这个方法是根据当前是谁的回合（mrX 或侦探），它会返回对应的可用移动集合。
 
 		public ImmutableSet<Move> getAvailableMoves() { 	//移动集合
-			//没有赢家，返回空
-			if (!winner.isEmpty()) return ImmutableSet.of();
-			//mrX回合，返回
-			if (mrXTurn()) {
-				//从movesMap（包含ImmutableSet<Move>）中获得mrX的可用移动getOrDefault有就创建mrXPlayer.piece对应的键的移动，没有就空列表
-				return movesMap.getOrDefault(mrXPlayer.piece(), ImmutableSet.of());
-			}else{
-				return getdetectivesMove();
+			// only computed the first time someone asks, afterwards served from the cache
+			if (availableMoves == null) {
+				//有赢家，返回空
+				if (!winner.isEmpty()) availableMoves = ImmutableSet.of();
+				//mrX回合，返回mrX的可用移动
+				else if (mrXTurn()) availableMoves = movesFor(mrXPlayer.piece());
+				else availableMoves = getdetectivesMove();
 			}
+			return availableMoves;
 		}
 
 
@@ -251,7 +279,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				//是不是仍然可移动的玩家？
 				if (remaining.contains(detective.piece())) {
 					//把当前侦探的移动加到combined实例的列表中
-					combined.addAll(movesMap.getOrDefault(detective.piece(), ImmutableSet.of()));
+					combined.addAll(movesFor(detective.piece()));
 				}
 			}
 
@@ -278,7 +306,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			//没有玩家就没票
 			if (player == null) return Optional.empty();
 
-			return Optional.of(ticket -> player.tickets().getOrDefault(ticket, 0));
+			return Optional.of(ticket -> player.count(ticket));
 			//Lambda 表达式：更简洁地实现接口
 			//该作用是：给定一个票证 ticket，返回该票证的数量，如果没有该票证，返回 0。
 			//
@@ -293,33 +321,54 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		public GameState advance(Move move) {
 			// commencedBy() 是 Move 类中的一个方法，这个方法用于返回进行该移动的玩家
 			// 看这个移动的玩家是谁
+			GameState next;
 			if (move.commencedBy().isMrX()) {
 				//后面写的方法
-				return handleMrXMove(move);
+				next = handleMrXMove(move);
 			} else {
 				//后面写的方法
-				return handleDetectiveMove(move);
+				next = handleDetectiveMove(move);
 			}
+			trace.onMoveApplied(this, move, next);
+			return next;
 		}
 //周三work done
 
 		// ============ Helper Methods ============
 
-	//在构造函数里被调用，用来生成每个角色和他可用的移动，不可改Map类型
-		private ImmutableMap<Piece, ImmutableSet<Move>> buildMovesMap() {
-			ImmutableMap.Builder<Piece, ImmutableSet<Move>> builder = ImmutableMap.builder();
+	//生成某个角色可用的移动，第一次调用时才计算，结果按角色缓存在movesCache里
+		private ImmutableSet<Move> movesFor(Piece piece) {
+			if (!winner.isEmpty()) return ImmutableSet.of();
+			ImmutableSet<Move>[] cache = movesCache;
+			if (cache == null) movesCache = cache = newMoveSets();
+			ImmutableSet<Move> moves = cache[slot(piece)];
+			if (moves != null) return moves;
+			// MrX always has his moves computed
+			if (piece.equals(mrXPlayer.piece())) moves = calculateAvailableMovesForMrX(this);
+			else {
+				// detectives only while they are still in remaining
+				Player detective = findPlayer(piece);
+				moves = detective == null || !remaining.contains(piece)
+						? ImmutableSet.of()
+						: calculateAvailableMovesForDetective(detective);
+			}
+			cache[slot(piece)] = moves;
+			return moves;
+		}
 
-			// All available moves for MrX
-			builder.put(mrXPlayer.piece(), calculateAvailableMovesForMrX(this));
+		// MrX first, then the detectives in declaration order
+		private static int slot(Piece piece) {
+			return piece.isMrX() ? 0 : 1 + ((Detective) piece).ordinal();
+		}
 
-			// Calculate available moves for each detective separately
-			for (Player detective : detectivePlayers) {
-				if(!remaining.contains(detective.piece()))
-					continue;
-				builder.put(detective.piece(), calculateAvailableMovesForDetective(detective));
-			}
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private static ImmutableSet<Move>[] newMoveSets() {
+			return new ImmutableSet[1 + Detective.values().length];
+		}
 
-			return builder.build();
+		private ImmutableSet<Move> cachedMoves(Piece piece) {
+			ImmutableSet<Move>[] cache = movesCache;
+			return cache == null ? null : cache[slot(piece)];
 		}
 
 
@@ -327,93 +376,29 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			ImmutableSet.Builder<Move> availableMoves = ImmutableSet.builder();
 
 			// Get Mr. X's current ticket information
-			ImmutableMap<Ticket, Integer> mrXTickets = myGameState.mrXPlayer.tickets();
+			Player mrX = myGameState.mrXPlayer;
+			int source = graph.index(mrX.location());
+			if (source < 0) return ImmutableSet.of();
+			int held = heldTickets(mrX);
 
-			// Calculate Mr. X's single moves
-			for (int destination : myGameState.setup.graph.adjacentNodes(myGameState.mrXPlayer.location())) {
-				if (detectiveInLocation(destination)) {
-					continue; // Skip if the destination is occupied by a detective
-				}
-				for (Transport transport : myGameState.setup.graph.edgeValueOrDefault(myGameState.mrXPlayer.location(), destination, ImmutableSet.of())) {
-					Ticket ticketRequired = transport.requiredTicket();
-
-					// Check if Mr. X has enough of the required ticket
-					if (mrXTickets.getOrDefault(ticketRequired, 0) > 0) {
-						availableMoves.add(new SingleMove(myGameState.mrXPlayer.piece(), myGameState.mrXPlayer.location(), ticketRequired, destination));
-					}
-					if (mrXTickets.getOrDefault(Ticket.SECRET, 0) > 0) {
-						availableMoves.add(new SingleMove(
-								myGameState.mrXPlayer.piece(),
-								myGameState.mrXPlayer.location(),
-								Ticket.SECRET,
-								destination
-						));
-					}
-				}
+			// Calculate Mr. X's single moves: the table's moves minus those onto detectives
+			for (long move : moveTable.singles(source, held)) {
+				if (occupied(PackedMove.destination(move))) continue;
+				availableMoves.add(moveTable.decode(move));
 			}
 
-			int remainingRounds = myGameState.setup.moves.size() - myGameState.currentRound;
+			// one log entry per MrX move, currentRound also counts the detectives' turns
+			int remainingRounds = myGameState.setup.moves.size() - myGameState.log.size();
 			// // Calculate Mr. X's double moves (if he has a Double Ticket)
-			if (mrXTickets.getOrDefault(Ticket.DOUBLE, 0) > 0 && remainingRounds >= 2)  {
-				for (int firstDestination : myGameState.setup.graph.adjacentNodes(myGameState.mrXPlayer.location())) {
-					if (detectiveInLocation(firstDestination)) continue;
-
-					for (Transport firstTransport : myGameState.setup.graph.edgeValueOrDefault(myGameState.mrXPlayer.location(), firstDestination, ImmutableSet.of())) {
-						Ticket firstTicketRequired = firstTransport.requiredTicket();
-						List<Ticket> firstStepTickets = new ArrayList<>();
-
-						if (mrXTickets.getOrDefault(firstTicketRequired, 0) > 0) {
-							firstStepTickets.add(firstTicketRequired);
-						}
-						if (mrXTickets.getOrDefault(Ticket.SECRET, 0) > 0) {
-							firstStepTickets.add(Ticket.SECRET);
-						}
-
-						if (firstStepTickets.isEmpty()) continue;
-						for (int secondDestination : myGameState.setup.graph.adjacentNodes(firstDestination)) {
-							if (detectiveInLocation(secondDestination)) continue;
-							for (Transport secondTransport : myGameState.setup.graph.edgeValueOrDefault(firstDestination, secondDestination, ImmutableSet.of())) {
-								Ticket secondRequired = secondTransport.requiredTicket();
-
-								List<Ticket> secondStepTickets = new ArrayList<>();
-
-								if (mrXTickets.getOrDefault(secondRequired, 0) > 0) {
-									secondStepTickets.add(secondRequired);
-								}
-
-								if (mrXTickets.getOrDefault(Ticket.SECRET, 0) > 0) {
-									secondStepTickets.add(Ticket.SECRET);
-								}
-
-								for (Ticket t1 : firstStepTickets) {
-									for (Ticket t2 : secondStepTickets) {
-										int secretNeeded = 0;
-										if (t1 == Ticket.SECRET) secretNeeded++;
-										if (t2 == Ticket.SECRET) secretNeeded++;
-
-										if (t1 == t2 && mrXTickets.getOrDefault(t1, 0) < 2)
-											continue;
-
-										if (secretNeeded <= mrXTickets.getOrDefault(Ticket.SECRET, 0)) {
-											availableMoves.add(new DoubleMove(
-													myGameState.mrXPlayer.piece(),
-													myGameState.mrXPlayer.location(),
-													t1, firstDestination,
-													t2, secondDestination
-											));
-										}
-
-									}
-
-								}
-							}
-
-						}
-
-
-
-
-					}
+			if (mrX.has(Ticket.DOUBLE) && remainingRounds >= 2)  {
+				for (long move : moveTable.doubles(source, held)) {
+					if (occupied(PackedMove.destination1(move))
+							|| occupied(PackedMove.destination(move))) continue;
+					// the same ticket twice needs two of them
+					int t1 = PackedMove.ticket1Ordinal(move);
+					if (t1 == PackedMove.ticket2Ordinal(move)
+							&& !mrX.hasAtLeast(PackedMove.ticket1(move), 2)) continue;
+					availableMoves.add(PackedMove.decode(move));
 				}
 			}
 
@@ -428,140 +413,136 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				return ImmutableSet.of();
 			}
 
-			ImmutableMap<Ticket, Integer> tickets = detective.tickets();
-			int source = detective.location();
+			int index = graph.index(detective.location());
+			if (index < 0) return ImmutableSet.of();
+			int piece = ScotlandYard.ALL_PIECES.indexOf(detective.piece());
 
-			// Single moves
-			for (int destination : setup.graph.adjacentNodes(source)) {
+			// Single moves; detectives never hold secret tickets, see the factory checks
+			for (long move : moveTable.singles(index, heldTickets(detective))) {
 				// Detectives cannot move to a location already occupied by another detective
-				boolean isOccupiedByOtherDetective = false;
-				for (Player otherDetective : detectivePlayers) {
-					if (otherDetective != detective && otherDetective.location() == destination) {
-						isOccupiedByOtherDetective = true;
-						break;
-					}
-				}
-
-				if (isOccupiedByOtherDetective) {
+				if (isOccupiedByOtherDetective(detective, PackedMove.destination(move))) {
 					continue;
 				}
-
-				// Check if the detective has enough tickets to move
-				for (Transport transport : setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of())) {
-					Ticket required = transport.requiredTicket();
-					if (tickets.getOrDefault(required, 0) > 0) {
-						moves.add(new SingleMove(detective.piece(), source, required, destination));
-					}
-				}
+				moves.add(moveTable.decode(MoveTable.forPiece(move, piece)));
 			}
 
 			return moves.build();
 		}
 
-		private ImmutableSet<Move> calculateAvailableMovesForDetectives(MyGameState myGameState) {
-			ImmutableSet.Builder<Move> availableMoves = ImmutableSet.builder();
+		private static long[] occupancyOf(CompiledGraph graph, List<Player> detectives) {
+			long[] occupancy = new long[graph.words()];
+			for (Player detective : detectives) {
+				int index = graph.index(detective.location());
+				if (index >= 0) occupancy[index >>> 6] |= 1L << index;
+			}
+			return occupancy;
+		}
 
-			// For each detective, calculate all valid single moves
-			for (Player detective : myGameState.detectivePlayers) {
-				if (!myGameState.remaining.contains(detective.piece())) {
-					continue;
-				}
-				// Get ticket information for detectives
-				ImmutableMap<Ticket, Integer> detectiveTickets = detective.tickets();
-
-				// calculate single moves for detective
-				for (int destination : myGameState.setup.graph.adjacentNodes(detective.location())) {
-					boolean isOccupiedByOtherDetective = false;
-					for (Player otherDetective : myGameState.detectivePlayers) {
-						if (otherDetective != detective && otherDetective.location() == destination) {
-							isOccupiedByOtherDetective = true;
-							break;
-						}
-					}
-
-					if (isOccupiedByOtherDetective) {
-						continue;  // Skip destination occupied by another detective
-					}
-
-					for (Transport transport : myGameState.setup.graph.edgeValueOrDefault(detective.location(), destination, ImmutableSet.of())) {
-						Ticket ticketRequired = transport.requiredTicket();
-
-						// Determine if the detective has enough tickets to make the move
-						if (detectiveTickets.getOrDefault(ticketRequired, 0) > 0) {
-							availableMoves.add(new SingleMove(detective.piece(), detective.location(), ticketRequired, destination));
-						}
-					}
-				}
+		// the occupancy after a detective moves from one node to another, this one is left as is
+		private long[] moveDetective(int from, int to) {
+			int fromIndex = graph.index(from);
+			int toIndex = graph.index(to);
+			if (toIndex < 0) throw new IllegalArgumentException("Location " + to + " is not on the map");
+			if (isSet(occupancy, toIndex))
+				throw new IllegalArgumentException("Two detectives in same location!");
+			long[] moved = occupancy.clone();
+			if (fromIndex >= 0) moved[fromIndex >>> 6] &= ~(1L << fromIndex);
+			moved[toIndex >>> 6] |= 1L << toIndex;
+			return moved;
+		}
+
+		private static boolean isSet(long[] bits, int index) {
+			return (bits[index >>> 6] & (1L << index)) != 0;
+		}
+
+		// whether a detective stands on the given location
+		private boolean occupied(int location) {
+			int index = graph.index(location);
+			return index >= 0 && isSet(occupancy, index);
+		}
+
+		// mask of the travel tickets the player holds at least one of, see CompiledGraph#tickets
+		private static int heldTickets(Player player) {
+			int mask = 0;
+			for (Ticket ticket : TICKETS) {
+				if (player.has(ticket)) mask |= CompiledGraph.mask(ticket);
 			}
+			return mask;
+		}
 
-			return availableMoves.build();
+		// ============ Win / stuck evaluation ============
+		// These only answer "is there any legal move": they stop at the first one found and never
+		// build a move set. Move sets that are already in movesCache are reused instead.
+
+		private boolean mrXHasAnyMove() {
+			ImmutableSet<Move> cached = cachedMoves(mrXPlayer.piece());
+			if (cached != null) return !cached.isEmpty();
+			int source = graph.index(mrXPlayer.location());
+			if (source < 0) return false;
+			int held = heldTickets(mrXPlayer);
+			// a double move always starts with a single move, so single moves are enough
+			for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+				if ((graph.tickets(e) & held) != 0
+						&& !isSet(occupancy, graph.target(e))) return true;
+			}
+			return false;
 		}
 
-		private ImmutableSet<Move> calculateAvailableMovesForDetectivesWithoutRemaining(MyGameState myGameState){
-			ImmutableSet.Builder<Move> availableMoves = ImmutableSet.builder();
+		private boolean detectiveHasAnyMove(Player detective) {
+			ImmutableSet<Move> cached = remaining.contains(detective.piece())
+					? cachedMoves(detective.piece())
+					: null;
+			if (cached != null) return !cached.isEmpty();
+			int source = graph.index(detective.location());
+			if (source < 0) return false;
+			int held = heldTickets(detective);
+			for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+				if ((graph.tickets(e) & held) != 0
+						&& !isSet(occupancy, graph.target(e))) return true;
+			}
+			return false;
+		}
 
-			// In the case of a detective, calculate the legal location to which it can be moved
-			for (Player detective : myGameState.detectivePlayers) {
-				// get ticket information for detective
-				ImmutableMap<Ticket, Integer> detectiveTickets = detective.tickets();
-
-				// calculate single move for detectives
-				for (int destination : myGameState.setup.graph.adjacentNodes(detective.location())) {
-					boolean isOccupiedByOtherDetective = false;
-					for (Player otherDetective : myGameState.detectivePlayers) {
-						if (otherDetective != detective && otherDetective.location() == destination) {
-							isOccupiedByOtherDetective = true;
-							break;
-						}
-					}
-
-					if (isOccupiedByOtherDetective) {
-						continue;  // Skip destination occupied by another detective
-					}
-
-					for (Transport transport : myGameState.setup.graph.edgeValueOrDefault(detective.location(), destination, ImmutableSet.of())) {
-						Ticket ticketRequired = transport.requiredTicket();
-
-						// check weather detective have enough ticket
-						if (detectiveTickets.getOrDefault(ticketRequired, 0) > 0) {
-							availableMoves.add(new SingleMove(detective.piece(), detective.location(), ticketRequired, destination));
-						}
-					}
-				}
+		// remainingOnly limits the check to detectives that still have to move this round
+		private boolean anyDetectiveHasAnyMove(boolean remainingOnly) {
+			for (Player detective : detectivePlayers) {
+				if (remainingOnly && !remaining.contains(detective.piece())) continue;
+				if (detectiveHasAnyMove(detective)) return true;
 			}
+			return false;
+		}
 
-			return availableMoves.build();
+		// detective locations are distinct, so any occupied node other than its own is another's
+		private boolean isOccupiedByOtherDetective(Player detective, int location) {
+			return location != detective.location() && occupied(location);
 		}
 
-		private ImmutableSet<Piece> calculateWinner(MyGameState myGameState) {
-			System.out.println("#" + myGameState);
+		// returns why the game is over, or null if there is no winner yet
+		private WinReason calculateWinner(MyGameState myGameState) {
 			// Check if MrX has been caught
-			for (Player detective : myGameState.detectivePlayers) {
-				if (detective.location() == myGameState.mrXPlayer.location()){
-					System.out.println("detectives win cause of catch mrx");
-					return detectivesWin();
-				}
-
+			if (myGameState.occupied(myGameState.mrXPlayer.location())) {
+				return WinReason.MRX_CAPTURED;
 			}
 
 			if(myGameState.log.size() >= myGameState.setup.moves.size()){
-				return mrXWin();
+				return WinReason.ROUNDS_COMPLETE;
 			}
 
+			// check the cheap turn conditions first, then look for a single legal move
 			boolean allDetectivesStuck = false;
-			if (calculateAvailableMovesForDetectives(myGameState).isEmpty() && (!myGameState.mrXTurn())) {
+			if (!myGameState.mrXTurn() && !myGameState.anyDetectiveHasAnyMove(true)) {
 				allDetectivesStuck = true;
 			}
 			if(allDetectivesOutOfTickets(myGameState)){
 				allDetectivesStuck = true;
 			}
-			if(calculateAvailableMovesForDetectivesWithoutRemaining(myGameState).isEmpty() && myGameState.currentRound == 0){
+			if(myGameState.currentRound == 0 && !myGameState.anyDetectiveHasAnyMove(false)){
 				allDetectivesStuck = true;
 			}
 
 
 			boolean mrxStuck = false;
-			if(calculateAvailableMovesForMrX(myGameState).isEmpty() && myGameState.mrXTurn())
+			if(myGameState.mrXTurn() && !myGameState.mrXHasAnyMove())
 				mrxStuck = true;
 
 			if(isMrXBlocked(myGameState)){
@@ -569,20 +550,16 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			}
 
 			if(mrxStuck){
-				System.out.println("detectives win cause of mrxStuck");
-				System.out.println(myGameState);
-				return detectivesWin();
+				return WinReason.MRX_STUCK;
 			}
 
 			if (allDetectivesStuck){
-				System.out.println("mrXWin cause of allDetectivesStuck");
-				System.out.println("extra output in calculateWinner:" + myGameState);
-				return mrXWin();
+				return WinReason.DETECTIVES_STUCK;
 			}
 
 
 			// If no win conditions are met, continue the game with no winner yet
-			return ImmutableSet.of();
+			return null;
 		}
 
 		private boolean allDetectivesOutOfTickets(MyGameState myGameState) {
@@ -620,26 +597,25 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		private MyGameState nextState(
 				Player newMrX,
 				ImmutableList<Player> newDetectives,
+				long[] newOccupancy,
 				int nextRound,
-				ImmutableList<LogEntry> newLog,
-				ImmutableSet<Piece> newWinner,
+				TravelLog newLog,
 				ImmutableSet<Piece> newremaining) {
 
 
-			ImmutableSet<Piece> filteredRemaining = newremaining.stream()
-					.filter(p -> {
-						Player detective = findPlayer(p);  // Get the corresponding Player
-						if (detective != null && detective.piece().equals(p)) {
-							// Skip this detective if they have no available moves
-							ImmutableSet<Move> availableMoves = movesMap.getOrDefault(detective.piece(), ImmutableSet.of());
-							return !availableMoves.isEmpty();
-						}
-						return true;
-					})
-					.collect(ImmutableSet.toImmutableSet());
-
-
+			ImmutableSet<Piece> filteredRemaining;
 			if(DetectiverTrun()){
+				// only the detectives' turn needs the filter, after MrX moves remaining is rebuilt below
+				filteredRemaining = newremaining.stream()
+						.filter(p -> {
+							Player detective = findPlayer(p);  // Get the corresponding Player
+							if (detective != null && detective.piece().equals(p)) {
+								// Skip this detective if they have no available moves
+								return !movesFor(detective.piece()).isEmpty();
+							}
+							return true;
+						})
+						.collect(ImmutableSet.toImmutableSet());
 				if (filteredRemaining.isEmpty()) {
 					nextRound++;
 					filteredRemaining = ImmutableSet.of(newMrX.piece());
@@ -652,32 +628,20 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			}
 
 
-			MyGameState newState =  new MyGameState(
+			// the winner is worked out once by the new state itself
+			return new MyGameState(
 					this.setup,
+					graph,
+					moveTable,
 					newMrX,
 					newDetectives,
+					newOccupancy,
 					nextRound,
 					newLog,
-					newWinner,
-					filteredRemaining
+					null,
+					filteredRemaining,
+					trace
 			);
-
-			ImmutableSet<Piece> winner = calculateWinner(newState);
-			if(winner.isEmpty())
-				return newState;
-			else{
-				return new MyGameState(
-						this.setup,
-						newMrX,
-						newDetectives,
-						nextRound,
-						newLog,
-						winner,
-						filteredRemaining
-				);
-			}
-
-
 		}
 
 		private GameState handleMrXMove(Move move) {
@@ -701,7 +665,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 			// Check if all adjacent nodes are occupied by detectives
 			for (int destination : possibleDestinations) {
-				if (!isOccupiedByDetective(myGameState, destination)) {
+				if (!myGameState.occupied(destination)) {
 					return false;
 				}
 			}
@@ -710,13 +674,6 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		}
 
 
-		private boolean isOccupiedByDetective(MyGameState myGameState, int location) {
-			for (Player detective : myGameState.detectivePlayers) {
-				if (detective.location() == location) return true;
-			}
-			return false;
-		}
-
 		private GameState doMrXSingleMove(SingleMove m) {
 			// Deduct the used ticket
 			Player updatedMrX = mrXPlayer.use(m.ticket);
@@ -724,21 +681,24 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			updatedMrX = updatedMrX.at(m.destination);
 
 
-			// Reveal rule
-			boolean reveal = setup.moves.get(currentRound);
-			ImmutableList<LogEntry> updatedLog = updateLogForMrX(log, m.ticket, m.destination, reveal);
+			// Reveal rule, the log has one entry per MrX round so far
+			boolean reveal = setup.moves.get(log.size());
+			TravelLog updatedLog = updateLogForMrX(log, m.ticket, m.destination, reveal);
 
 			// MrX wins if he finishes all rounds
 			if (updatedLog.size() >= setup.moves.size()) {
-				System.out.println("mrXWin cause of MrX get maxPath");
 				return new MyGameState(
 						setup,
+						graph,
+						moveTable,
 						updatedMrX,
 						detectivePlayers,
+						occupancy,
 						currentRound,
 						updatedLog,
-						mrXWin(),
-						remaining
+						WinReason.ROUNDS_COMPLETE,
+						remaining,
+						trace
 				);
 			}
 
@@ -746,9 +706,9 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			return nextState(
 					updatedMrX,
 					detectivePlayers,
+					occupancy,
 					currentRound,
 					updatedLog,
-					ImmutableSet.of(),
 					remaining
 			);
 		}
@@ -761,23 +721,27 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			updatedMrX = updatedMrX.at(m.destination1);
 
 			// Update log after first move
-			boolean reveal = setup.moves.get(currentRound);
-			ImmutableList<LogEntry> logAfterFirst = updateLogForMrX(log, m.ticket1, m.destination1, reveal);
-			// Second move
+			boolean reveal = setup.moves.get(log.size());
+			TravelLog logAfterFirst = updateLogForMrX(log, m.ticket1, m.destination1, reveal);
+			// Second move, each half of a double move takes its own round
 			updatedMrX = updatedMrX.at(m.destination2);
-			ImmutableList<LogEntry> finalLog = updateLogForMrX(logAfterFirst, m.ticket2, m.destination2, reveal);
+			TravelLog finalLog = updateLogForMrX(logAfterFirst, m.ticket2, m.destination2,
+					setup.moves.get(logAfterFirst.size()));
 
 			// If MrX finishes all rounds after double move, he wins
 			if (finalLog.size() >= setup.moves.size()) {
-				System.out.println("mrXWin cause of MrX get maxPath");
 				return new MyGameState(
 						setup,
+						graph,
+						moveTable,
 						updatedMrX,
 						detectivePlayers,
+						occupancy,
 						currentRound,
 						finalLog,
-						mrXWin(),
-						remaining
+						WinReason.ROUNDS_COMPLETE,
+						remaining,
+						trace
 				);
 			}
 
@@ -785,9 +749,9 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			return nextState(
 					updatedMrX,
 					detectivePlayers,
+					occupancy,
 					currentRound,
 					finalLog,
-					ImmutableSet.of(),
 					remaining
 			);
 		}
@@ -831,19 +795,23 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				}
 			}
 			ImmutableList<Player> updatedDetectives = ImmutableList.copyOf(newDetectives);
+			long[] updatedOccupancy = moveDetective(detective.location(), m.destination);
 
 
 			// If detective catches MrX => detectives win
 			if (updatedDetective.location() == mrXPlayer.location()) {
-				System.out.println("detectives win cause of catch mrx");
 				return new MyGameState(
 						setup,
+						graph,
+						moveTable,
 						updatedMrX,
 						updatedDetectives,
+						updatedOccupancy,
 						currentRound,
 						log,
-						detectivesWin(),
-						newRemaining
+						WinReason.MRX_CAPTURED,
+						newRemaining,
+						trace
 				);
 			}
 
@@ -851,29 +819,21 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			return nextState(
 					updatedMrX,
 					updatedDetectives,
+					updatedOccupancy,
 					currentRound,
 					log,
-					ImmutableSet.of(),
 					newRemaining
 			);
 		}
 
 
-		private boolean detectiveInLocation(int location) {
-			for (Player d : detectivePlayers) {
-				if (d.location() == location) return true;
-			}
-			return false;
-		}
-
-		private ImmutableList<LogEntry> updateLogForMrX(ImmutableList<LogEntry> oldLog, Ticket t, int location, boolean reveal) {
-			List<LogEntry> newLog = new ArrayList<>(oldLog);
+		// O(1): the new log shares oldLog's entries, see TravelLog
+		private TravelLog updateLogForMrX(TravelLog oldLog, Ticket t, int location, boolean reveal) {
 			if (reveal) {
-				newLog.add(LogEntry.reveal(t, location));
+				return oldLog.append(LogEntry.reveal(t, location));
 			} else {
-				newLog.add(LogEntry.hidden(t));
+				return oldLog.append(LogEntry.hidden(t));
 			}
-			return ImmutableList.copyOf(newLog);
 		}
 
 		private ImmutableSet<Piece> detectivesWin() {
@@ -889,6 +849,11 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			return ImmutableSet.of(mrXPlayer.piece());
 		}
 
+		private ImmutableSet<Piece> winnerFor(WinReason reason) {
+			if (reason == null) return ImmutableSet.of();
+			return reason.mrXWins() ? mrXWin() : detectivesWin();
+		}
+
 		@Override
 		public String toString() {
 			return "MyGameState{" +
@@ -896,7 +861,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 					", mrXPlayer=" + mrXPlayer +
 					", detectivePlayers=" + detectivePlayers +
 					", log=" + log +
-					", movesMap=" + movesMap +
+					", movesCache=" + Arrays.toString(movesCache) +
 					", winner=" + winner +
 					", remaining=" + remaining +
 					'}';
@@ -10,15 +10,25 @@ import com.google.common.collect.ImmutableSet;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 
 
 public final class MyModelFactory implements Factory<Model> {
 
+	private final Factory<GameState> stateFactory;
+
+	public MyModelFactory() { this(new MyGameStateFactory()); }
+
+	// lets the model run on top of any game state implementation
+	public MyModelFactory(Factory<GameState> stateFactory) {
+		this.stateFactory = Objects.requireNonNull(stateFactory);
+	}
+
 	@Nonnull
 	@Override
 	public Model build(GameSetup setup, Player mrX, ImmutableList<Player> detectives) {
-		return new MyModel(new MyGameStateFactory().build(setup, mrX, detectives));
+		return new MyModel(stateFactory.build(setup, mrX, detectives));
 	}
 
 	private static final class MyModel implements Model {
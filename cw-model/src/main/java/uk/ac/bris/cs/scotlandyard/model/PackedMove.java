@@ -0,0 +1,192 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Encodes a {@link Move} into a single {@code long} so search code can generate, store and
+ * order moves without allocating.
+ * <br>
+ * Layout, from the least significant bit:
+ * <pre>
+ *  0-2   piece, the index in {@link ScotlandYard#ALL_PIECES}
+ *  3     set for double moves
+ *  4-6   first ticket ordinal
+ *  7-9   second ticket ordinal, 0 for single moves
+ *  16-31 source node id
+ *  32-47 first destination node id
+ *  48-63 final destination node id, the same as the first for single moves
+ * </pre>
+ * Node ids must be within {@code [0, 65535]}, as for {@link CompiledGraph}. Two moves are equal
+ * if and only if their encodings are.
+ */
+public final class PackedMove {
+
+	private static final int DOUBLE_BIT = 1 << 3;
+	private static final int NODE_MASK = 0xFFFF;
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	/**
+	 * Something that can write its available moves into a {@link MoveList}
+	 */
+	public interface Generator {
+		/**
+		 * Appends the available moves, exactly those of {@link Board#getAvailableMoves()}
+		 *
+		 * @param out the list to append to
+		 * @return the number of moves appended
+		 */
+		int generate(@Nonnull MoveList out);
+	}
+
+	private PackedMove() {}
+
+	/**
+	 * @param piece the piece index in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the source node id
+	 * @param ticket the ticket ordinal
+	 * @param destination the destination node id
+	 * @return the packed single move
+	 */
+	public static long single(int piece, int source, int ticket, int destination) {
+		return piece | ticket << 4 | (long) source << 16
+				| (long) destination << 32 | (long) destination << 48;
+	}
+
+	/**
+	 * @param source the source node id
+	 * @param ticket1 the first ticket ordinal
+	 * @param destination1 the first destination node id
+	 * @param ticket2 the second ticket ordinal
+	 * @param destination2 the second destination node id
+	 * @return the packed double move made by MrX
+	 */
+	public static long x2(int source, int ticket1, int destination1,
+	                      int ticket2, int destination2) {
+		return DOUBLE_BIT | ticket1 << 4 | ticket2 << 7 | (long) source << 16
+				| (long) destination1 << 32 | (long) destination2 << 48;
+	}
+
+	/**
+	 * @param move the move
+	 * @return the packed move
+	 */
+	public static long encode(@Nonnull Move move) {
+		int piece = BitboardGameStateFactory.ordinal(move.commencedBy());
+		if (piece < 0) throw new IllegalArgumentException("Unknown piece " + move.commencedBy());
+		return move.accept(new Move.Visitor<Long>() {
+			@Override public Long visit(SingleMove m) {
+				checkNode(m.source());
+				checkNode(m.destination);
+				return single(piece, m.source(), m.ticket.ordinal(), m.destination);
+			}
+			@Override public Long visit(DoubleMove m) {
+				if (piece != BitboardGameStateFactory.MRX)
+					throw new IllegalArgumentException("Only MrX can make double moves");
+				checkNode(m.source());
+				checkNode(m.destination1);
+				checkNode(m.destination2);
+				return x2(m.source(), m.ticket1.ordinal(), m.destination1,
+						m.ticket2.ordinal(), m.destination2);
+			}
+		});
+	}
+
+	/**
+	 * @param move the packed move
+	 * @return the equivalent {@link SingleMove} or {@link DoubleMove}
+	 */
+	@Nonnull public static Move decode(long move) {
+		Piece piece = ScotlandYard.ALL_PIECES.get(piece(move));
+		return isDouble(move)
+				? new DoubleMove(piece, source(move),
+				ticket1(move), destination1(move),
+				ticket2(move), destination(move))
+				: new SingleMove(piece, source(move), ticket1(move), destination(move));
+	}
+
+	/**
+	 * @param move the packed move
+	 * @return the piece index in {@link ScotlandYard#ALL_PIECES}
+	 */
+	public static int piece(long move) { return (int) move & 7; }
+
+	/**
+	 * @param move the packed move
+	 * @return true if the move is a double move
+	 */
+	public static boolean isDouble(long move) { return (move & DOUBLE_BIT) != 0; }
+
+	/**
+	 * @param move the packed move
+	 * @return the source node id
+	 */
+	public static int source(long move) { return (int) (move >>> 16) & NODE_MASK; }
+
+	/**
+	 * @param move the packed move
+	 * @return the first, or only, ticket ordinal
+	 */
+	public static int ticket1Ordinal(long move) { return (int) (move >>> 4) & 7; }
+
+	/**
+	 * @param move the packed move
+	 * @return the second ticket ordinal; 0 for single moves
+	 */
+	public static int ticket2Ordinal(long move) { return (int) (move >>> 7) & 7; }
+
+	/**
+	 * @param move the packed move
+	 * @return the first, or only, ticket
+	 */
+	@Nonnull public static Ticket ticket1(long move) { return TICKETS[ticket1Ordinal(move)]; }
+
+	/**
+	 * @param move the packed double move
+	 * @return the second ticket
+	 */
+	@Nonnull public static Ticket ticket2(long move) { return TICKETS[ticket2Ordinal(move)]; }
+
+	/**
+	 * @param move the packed move
+	 * @return the first destination node id; the destination for single moves
+	 */
+	public static int destination1(long move) { return (int) (move >>> 32) & NODE_MASK; }
+
+	/**
+	 * @param move the packed move
+	 * @return the node id the piece ends up on
+	 */
+	public static int destination(long move) { return (int) (move >>> 48) & NODE_MASK; }
+
+	/**
+	 * @param move the packed move
+	 * @return the same text as {@link Move#toString()} of the decoded move
+	 */
+	@Nonnull public static String toString(long move) { return decode(move).toString(); }
+
+	/**
+	 * Appends the available moves of a board.
+	 * <br>
+	 * Boards implementing {@link Generator} write their moves directly, any other board has its
+	 * {@link Board#getAvailableMoves()} encoded.
+	 *
+	 * @param board the board
+	 * @param out the list to append to
+	 * @return the number of moves appended
+	 */
+	public static int generate(@Nonnull Board board, @Nonnull MoveList out) {
+		if (board instanceof Generator) return ((Generator) board).generate(out);
+		int size = out.size();
+		for (Move move : board.getAvailableMoves()) out.add(encode(move));
+		return out.size() - size;
+	}
+
+	private static void checkNode(int id) {
+		if (id < 0 || id > NODE_MASK)
+			throw new IllegalArgumentException("Node id " + id + " is not within [0, 65535]");
+	}
+}
@@ -2,7 +2,7 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableMap;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
@@ -12,21 +12,58 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 /**
  * A POJO representing an immutable player of the ScotlandYard game.
  * Each player contains the {@link Piece} (coloured counter), {@link Ticket}s, and the location.
+ * <br>
+ * Tickets are packed into one {@code long}: an 11 bit count per ticket type plus a bit per type
+ * that says whether the type is in {@link #tickets()} at all (a ticket given as 0 is kept as
+ * 0, a ticket left out stays left out). The map is only built when asked for.
  */
 
 
 public final class Player {
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int BITS = 11;
+	private static final long COUNT_MASK = (1L << BITS) - 1;
+	/**
+	 * The largest count a player can hold of any one ticket
+	 */
+	public static final int MAX_TICKETS = (int) COUNT_MASK;
+	private static final int PRESENT_SHIFT = BITS * TICKETS.length;
+
 	private final Piece piece;
-	private final ImmutableMap<Ticket, Integer> tickets;
+	private final long tickets;
 	private final int location;
+	private ImmutableMap<Ticket, Integer> ticketMap;
 
 	public Player(@Nonnull Piece piece,
 	              @Nonnull ImmutableMap<Ticket, Integer> tickets,
 	              int location) {
+		this(piece, pack(Objects.requireNonNull(tickets)), location, tickets);
+	}
+
+	private Player(Piece piece, long tickets, int location, ImmutableMap<Ticket, Integer> map) {
 		this.piece = Objects.requireNonNull(piece);
-		this.tickets = Objects.requireNonNull(tickets);
+		this.tickets = tickets;
 		this.location = location;
+		this.ticketMap = map;
 	}
+
+	private static long pack(Map<Ticket, Integer> tickets) {
+		long packed = 0;
+		for (Map.Entry<Ticket, Integer> entry : tickets.entrySet()) {
+			int count = entry.getValue();
+			if (count < 0 || count > MAX_TICKETS)
+				throw new IllegalArgumentException(
+						entry.getKey() + " count " + count + " is not within [0, " + MAX_TICKETS + "]");
+			int t = entry.getKey().ordinal();
+			packed |= (long) count << shift(t) | 1L << (PRESENT_SHIFT + t);
+		}
+		return packed;
+	}
+
+	private static int shift(int ticket) { return ticket * BITS; }
+
+	private boolean present(int ticket) { return (tickets & 1L << (PRESENT_SHIFT + ticket)) != 0; }
+
 	/**
 	 * @return the piece
 	 */
@@ -42,26 +79,39 @@ public final class Player {
 	/**
 	 * @return the ticket
 	 */
-	@Nonnull public ImmutableMap<Ticket, Integer> tickets() { return tickets; }
+	@Nonnull public ImmutableMap<Ticket, Integer> tickets() {
+		ImmutableMap<Ticket, Integer> map = ticketMap;
+		if (map == null) {
+			var builder = ImmutableMap.<Ticket, Integer>builder();
+			for (Ticket ticket : TICKETS)
+				if (present(ticket.ordinal())) builder.put(ticket, count(ticket));
+			// racing threads build equal maps, so publishing either one is fine
+			ticketMap = map = builder.build();
+		}
+		return map;
+	}
 	/**
 	 * @return the location
 	 */
 	public int location() { return location; }
 	/**
 	 * @param ticket the ticket
-	 * @return whether the player has the given ticket
+	 * @return the number of the given ticket held, 0 if the player has none
 	 */
-	public boolean has(@Nonnull Ticket ticket) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) != 0;
+	public int count(@Nonnull Ticket ticket) {
+		return (int) (tickets >>> shift(ticket.ordinal()) & COUNT_MASK);
 	}
+	/**
+	 * @param ticket the ticket
+	 * @return whether the player has the given ticket
+	 */
+	public boolean has(@Nonnull Ticket ticket) { return count(ticket) != 0; }
 	/**
 	 * @param ticket the ticket
 	 * @param count the required count
 	 * @return whether the player has &gt;= the required numbers of the given ticket
 	 */
-	public boolean hasAtLeast(@Nonnull Ticket ticket, int count) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) >= count;
-	}
+	public boolean hasAtLeast(@Nonnull Ticket ticket, int count) { return count(ticket) >= count; }
 	/**
 	 * See {@link #give(Ticket)}
 	 *
@@ -75,12 +125,15 @@ public final class Player {
 	}
 	/**
 	 * @param ticket the ticket
-	 * @return a new player with one more of the given ticket
+	 * @return a new player with one more of the given ticket; ticket types the player was
+	 * created without are left out
 	 */
 	@Nonnull public Player give(@Nonnull Ticket ticket) {
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n + 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		int t = ticket.ordinal();
+		if (!present(t)) return new Player(piece, tickets, location, ticketMap);
+		if (count(ticket) == MAX_TICKETS)
+			throw new IllegalArgumentException("Cannot hold more than " + MAX_TICKETS + " " + ticket);
+		return new Player(piece, tickets + (1L << shift(t)), location, null);
 	}
 	/**
 	 * See {@link #use(Ticket)}
@@ -100,22 +153,27 @@ public final class Player {
 	@Nonnull public Player use(@Nonnull Ticket ticket) {
 		if (!has(ticket))
 			throw new IllegalArgumentException("No " + ticket + " remaining");
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n - 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		return new Player(piece, tickets - (1L << shift(ticket.ordinal())), location, null);
 	}
 	/**
 	 * @param newLocation the location
 	 * @return a new player at the given location
 	 */
-	@Nonnull public Player at(int newLocation) { return new Player(piece, tickets, newLocation); }
+	@Nonnull public Player at(int newLocation) {
+		return new Player(piece, tickets, newLocation, ticketMap);
+	}
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		Player that = (Player) o;
-		return location == that.location && piece == that.piece &&
-				Objects.equals(tickets, that.tickets);
+		return location == that.location && piece == that.piece && tickets == that.tickets;
+	}
+	// same value as Objects.hash(piece, tickets(), location) without building the map
+	@Override public int hashCode() {
+		int mapHash = 0;
+		for (Ticket ticket : TICKETS)
+			if (present(ticket.ordinal())) mapHash += ticket.hashCode() ^ count(ticket);
+		return 31 * (31 * (31 + piece.hashCode()) + mapHash) + location;
 	}
-	@Override public int hashCode() { return Objects.hash(piece, tickets, location); }
-	@Override public String toString() { return piece + "@" + location + "(" + tickets + ")"; }
+	@Override public String toString() { return piece + "@" + location + "(" + tickets() + ")"; }
 }
@@ -0,0 +1,220 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Answers "where can a player be after k moves" with bit-matrix algebra over a
+ * {@link CompiledGraph}.
+ * <br>
+ * Every {@link Transport} is an adjacency bit-matrix with one row of {@link CompiledGraph#words()}
+ * longs per node (four on the standard 199 node map), and every set of taxi, bus, underground and
+ * secret tickets gets the union of the rows it can pay for. Node sets are {@code long[]} bitsets
+ * over the dense node indices, the same layout as detective occupancy elsewhere in the model, so
+ * expanding a frontier is a word-wide OR of one row per frontier node followed by masking out the
+ * blocked nodes.
+ * <br>
+ * Instances are immutable, built once per graph and safe to share between threads.
+ */
+public final class ReachabilityEngine {
+
+	private static final LoadingCache<CompiledGraph, ReachabilityEngine> CACHE =
+			CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(ReachabilityEngine::new));
+
+	private static final int SUBSETS = CompiledGraph.TRAVEL_SUBSETS;
+	// a budget is kept for the ticket of every travel subset bit
+	private static final int BUDGETS = CompiledGraph.TRAVEL_BITS;
+
+	private final CompiledGraph graph;
+	private final int size;
+	private final int words;
+	// [transport ordinal][node * words + word]
+	private final long[][] transports;
+	// [ticket subset][node * words + word]
+	private final long[][] subsets;
+
+	private ReachabilityEngine(CompiledGraph graph) {
+		this.graph = graph;
+		this.size = graph.size();
+		this.words = graph.words();
+		this.transports = new long[Transport.values().length][size * words];
+		this.subsets = new long[SUBSETS][size * words];
+		for (int node = 0; node < size; node++) {
+			for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+				int target = graph.target(e);
+				int word = node * words + (target >>> 6);
+				long bit = 1L << target;
+				for (Transport t : Transport.values())
+					if ((graph.transports(e) & CompiledGraph.mask(t)) != 0)
+						transports[t.ordinal()][word] |= bit;
+				for (int subset = 1; subset < SUBSETS; subset++)
+					if ((graph.tickets(e) & CompiledGraph.travelTickets(subset)) != 0)
+						subsets[subset][word] |= bit;
+			}
+		}
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the engine for the setup's graph, see {@link #of(CompiledGraph)}
+	 */
+	@Nonnull public static ReachabilityEngine of(@Nonnull GameSetup setup) {
+		return of(CompiledGraph.of(setup));
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the engine for the graph, built once per graph
+	 */
+	@Nonnull public static ReachabilityEngine of(@Nonnull CompiledGraph graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	/**
+	 * @return the graph the matrices are for
+	 */
+	@Nonnull public CompiledGraph graph() { return graph; }
+
+	/**
+	 * @param transport the transport
+	 * @param from a dense node index
+	 * @param to a dense node index
+	 * @return whether {@code transport} connects the nodes
+	 */
+	public boolean adjacent(@Nonnull Transport transport, int from, int to) {
+		return (transports[transport.ordinal()][from * words + (to >>> 6)] & (1L << to)) != 0;
+	}
+
+	/**
+	 * One move from every node of a frontier.
+	 *
+	 * @param frontier the nodes to move from
+	 * @param ticketMask mask of the ticket ordinals that may be used, see
+	 * {@link CompiledGraph#mask(Ticket)}; the double bit is ignored
+	 * @param blocked nodes that cannot be moved to, such as detective occupancy; may be null
+	 * @param out receives the nodes reachable in one move; must not be {@code frontier}
+	 */
+	public void expand(@Nonnull long[] frontier, int ticketMask, @Nullable long[] blocked,
+	                   @Nonnull long[] out) {
+		Arrays.fill(out, 0, words, 0);
+		orInto(subsets[CompiledGraph.travelSubset(ticketMask)], frontier, 0, out, 0);
+		if (blocked != null) for (int w = 0; w < words; w++) out[w] &= ~blocked[w];
+	}
+
+	/**
+	 * The nodes a player can be at after exactly {@code steps} moves, spending at most the given
+	 * number of each ticket. Taxi, bus, underground and secret tickets are budgeted; double tickets
+	 * are not, a double move being two moves here. Budgets of at least {@code steps} cost nothing
+	 * to track, so the common case is one expansion per step; tight budgets track every way of
+	 * spending them.
+	 *
+	 * @param start the nodes to start from
+	 * @param steps how many moves, at least 0
+	 * @param tickets ticket counts indexed by ticket ordinal
+	 * @param blocked nodes that can be neither passed through nor ended on; may be null
+	 * @return a new bitset of the reachable nodes
+	 */
+	@Nonnull public long[] reachable(@Nonnull long[] start, int steps, @Nonnull int[] tickets,
+	                                 @Nullable long[] blocked) {
+		if (steps < 0) throw new IllegalArgumentException("Negative steps " + steps);
+		// tickets with a budget below steps are tracked as a mixed radix spend index, the others
+		// are free and folded into one mask
+		int free = 0, states = 1;
+		int[] strides = new int[BUDGETS];
+		int[] limits = new int[BUDGETS];
+		for (int i = 0; i < BUDGETS; i++) {
+			int count = tickets[CompiledGraph.travelTicket(i)];
+			if (count < 0) throw new IllegalArgumentException("Negative ticket count " + count);
+			if (count >= steps) {
+				free |= 1 << i;
+				continue;
+			}
+			strides[i] = states;
+			limits[i] = count;
+			states *= count + 1;
+		}
+		long[] current = new long[states * words];
+		long[] next = new long[states * words];
+		System.arraycopy(start, 0, current, 0, words);
+		for (int step = 0; step < steps; step++) {
+			Arrays.fill(next, 0);
+			for (int state = 0; state < states; state++) {
+				int offset = state * words;
+				if (isEmpty(current, offset)) continue;
+				if (free != 0) orInto(subsets[free], current, offset, next, offset);
+				for (int i = 0; i < BUDGETS; i++) {
+					if ((free & (1 << i)) != 0 || (state / strides[i]) % (limits[i] + 1) == limits[i])
+						continue;
+					orInto(subsets[1 << i], current, offset, next, offset + strides[i] * words);
+				}
+			}
+			if (blocked != null)
+				for (int state = 0; state < states; state++)
+					for (int w = 0; w < words; w++) next[state * words + w] &= ~blocked[w];
+			long[] swap = current;
+			current = next;
+			next = swap;
+		}
+		long[] result = new long[words];
+		for (int state = 0; state < states; state++)
+			for (int w = 0; w < words; w++) result[w] |= current[state * words + w];
+		return result;
+	}
+
+	private boolean isEmpty(long[] bits, int offset) {
+		for (int w = 0; w < words; w++) if (bits[offset + w] != 0) return false;
+		return true;
+	}
+
+	// ORs the row of every node in frontier[from..] into out[to..]
+	private void orInto(long[] rows, long[] frontier, int from, long[] out, int to) {
+		for (int w = 0; w < words; w++) {
+			long bits = frontier[from + w];
+			while (bits != 0) {
+				int row = ((w << 6) + Long.numberOfTrailingZeros(bits)) * words;
+				for (int j = 0; j < words; j++) out[to + j] |= rows[row + j];
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	/**
+	 * @param ids node ids as used by {@link GameSetup#graph}
+	 * @return a new bitset of the nodes
+	 */
+	@Nonnull public long[] bitsOf(@Nonnull Iterable<Integer> ids) {
+		long[] bits = new long[words];
+		for (int id : ids) {
+			int index = graph.index(id);
+			if (index < 0) throw new IllegalArgumentException("Node " + id + " is not on the graph");
+			bits[index >>> 6] |= 1L << index;
+		}
+		return bits;
+	}
+
+	/**
+	 * @param bits a bitset over the dense node indices
+	 * @return the ids of the nodes in the set
+	 */
+	@Nonnull public ImmutableSet<Integer> idsOf(@Nonnull long[] bits) {
+		ImmutableSet.Builder<Integer> ids = ImmutableSet.builder();
+		for (int w = 0; w < words; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				ids.add(graph.id((w << 6) + Long.numberOfTrailingZeros(word)));
+				word &= word - 1;
+			}
+		}
+		return ids.build();
+	}
+}
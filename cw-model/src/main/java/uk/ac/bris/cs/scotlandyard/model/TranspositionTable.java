@@ -0,0 +1,147 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A fixed-size transposition table keyed on {@link MutableSearchState#key()}, shared by search
+ * threads.
+ * <br>
+ * Slots are picked by the low bits of the key and guarded by a fixed number of lock stripes, so
+ * threads only contend when they touch slots of the same stripe. A slot is overwritten when the
+ * new entry is for the same position, searched at least as deep, or the old entry is from an
+ * earlier search (see {@link #newSearch()}).
+ */
+public final class TranspositionTable {
+
+	/**
+	 * The score is exact
+	 */
+	public static final int EXACT = 0;
+	/**
+	 * The score is a lower bound, the search failed high
+	 */
+	public static final int LOWER = 1;
+	/**
+	 * The score is an upper bound, the search failed low
+	 */
+	public static final int UPPER = 2;
+
+	/**
+	 * Receives the fields of an entry from {@link #probe(long, Entry)}; reuse one per thread
+	 */
+	public static final class Entry {
+		public long move;
+		public int score;
+		public int depth;
+		public int bound;
+	}
+
+	private final int mask;
+	private final int stripeMask;
+	private final Object[] locks;
+
+	private final long[] keys;
+	private final long[] moves;
+	private final int[] scores;
+	private final byte[] depths;
+	private final byte[] bounds;
+	private final int[] generations;
+	private final boolean[] used;
+	private final AtomicInteger generation = new AtomicInteger();
+
+	/**
+	 * @param entries the number of slots, rounded up to a power of two
+	 */
+	public TranspositionTable(int entries) { this(entries, 64); }
+
+	/**
+	 * @param entries the number of slots, rounded up to a power of two
+	 * @param stripes the number of locks, rounded up to a power of two
+	 */
+	public TranspositionTable(int entries, int stripes) {
+		if (entries <= 0 || entries > 1 << 30)
+			throw new IllegalArgumentException("Entries must be within [1, 2^30]");
+		if (stripes <= 0) throw new IllegalArgumentException("Stripes must be positive");
+		int size = powerOfTwo(entries);
+		int lockCount = Math.min(size, powerOfTwo(stripes));
+		this.mask = size - 1;
+		this.stripeMask = lockCount - 1;
+		this.locks = new Object[lockCount];
+		for (int i = 0; i < lockCount; i++) locks[i] = new Object();
+		this.keys = new long[size];
+		this.moves = new long[size];
+		this.scores = new int[size];
+		this.depths = new byte[size];
+		this.bounds = new byte[size];
+		this.generations = new int[size];
+		this.used = new boolean[size];
+	}
+
+	private static int powerOfTwo(int n) { return n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1; }
+
+	/**
+	 * @param key the position key
+	 * @param out receives the entry if found
+	 * @return true if the table has an entry for the key
+	 */
+	public boolean probe(long key, @Nonnull Entry out) {
+		int slot = (int) key & mask;
+		synchronized (locks[slot & stripeMask]) {
+			if (!used[slot] || keys[slot] != key) return false;
+			out.move = moves[slot];
+			out.score = scores[slot];
+			out.depth = depths[slot];
+			out.bound = bounds[slot];
+			return true;
+		}
+	}
+
+	/**
+	 * @param key the position key
+	 * @param move the best packed move found; 0 if none
+	 * @param score the score
+	 * @param depth the depth searched, clamped to [0, 127]
+	 * @param bound one of {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+	 */
+	public void store(long key, long move, int score, int depth, int bound) {
+		int slot = (int) key & mask;
+		byte depthByte = (byte) Math.max(0, Math.min(127, depth));
+		int current = generation.get();
+		synchronized (locks[slot & stripeMask]) {
+			if (used[slot] && keys[slot] != key && generations[slot] == current
+					&& depths[slot] > depthByte) return;
+			used[slot] = true;
+			keys[slot] = key;
+			moves[slot] = move;
+			scores[slot] = score;
+			depths[slot] = depthByte;
+			bounds[slot] = (byte) bound;
+			generations[slot] = current;
+		}
+	}
+
+	/**
+	 * Marks every existing entry as old so it is replaced first; call once per root search. An
+	 * entry counts as current only if it was stored in this exact search, so the counter can
+	 * wrap around
+	 */
+	public void newSearch() { generation.incrementAndGet(); }
+
+	/**
+	 * Removes every entry
+	 */
+	public void clear() {
+		for (int stripe = 0; stripe < locks.length; stripe++) {
+			synchronized (locks[stripe]) {
+				for (int slot = stripe; slot <= mask; slot += locks.length) used[slot] = false;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	public int capacity() { return mask + 1; }
+}
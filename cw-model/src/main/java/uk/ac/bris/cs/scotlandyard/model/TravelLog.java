@@ -0,0 +1,95 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A persistent, append-only MrX travel log.
+ * <br>
+ * {@link #append(LogEntry)} returns a new log and leaves this one unchanged. Logs share one
+ * backing array with their prefixes: the first log to append at a given length writes into the
+ * shared array, so a line of play appends in amortised O(1); a sibling appending at the same
+ * length copies the prefix into a fresh array instead. Reads are plain array reads. The
+ * {@link ImmutableList} required by {@link Board#getMrXTravelLog()} is created on first use.
+ * <br>
+ * Instances are immutable and safe to share between threads.
+ */
+public final class TravelLog extends AbstractList<LogEntry> implements RandomAccess {
+
+	private static final TravelLog EMPTY = new TravelLog(new Buffer(new LogEntry[8]), 0);
+
+	// the shared array and how much of it has been claimed by some log
+	private static final class Buffer {
+		final LogEntry[] entries;
+		final AtomicInteger claimed = new AtomicInteger();
+		Buffer(LogEntry[] entries) { this.entries = entries; }
+	}
+
+	private final Buffer buffer;
+	private final int size;
+	private volatile ImmutableList<LogEntry> view;
+
+	private TravelLog(Buffer buffer, int size) {
+		this.buffer = buffer;
+		this.size = size;
+	}
+
+	/**
+	 * @return the empty log
+	 */
+	@Nonnull public static TravelLog empty() { return EMPTY; }
+
+	/**
+	 * @param entries the entries
+	 * @return a log with the given entries
+	 */
+	@Nonnull public static TravelLog of(@Nonnull Iterable<LogEntry> entries) {
+		TravelLog log = EMPTY;
+		for (LogEntry entry : entries) log = log.append(entry);
+		return log;
+	}
+
+	/**
+	 * @param entry the entry to add at the end
+	 * @return a new log with the entry appended
+	 */
+	@Nonnull public TravelLog append(@Nonnull LogEntry entry) {
+		Objects.requireNonNull(entry);
+		LogEntry[] entries = buffer.entries;
+		if (size < entries.length && buffer.claimed.compareAndSet(size, size + 1)) {
+			entries[size] = entry;
+			return new TravelLog(buffer, size + 1);
+		}
+		// taken by a sibling or full, copy only our own prefix
+		Buffer copy = new Buffer(new LogEntry[Math.max(8, size * 2)]);
+		System.arraycopy(entries, 0, copy.entries, 0, size);
+		copy.entries[size] = entry;
+		copy.claimed.set(size + 1);
+		return new TravelLog(copy, size + 1);
+	}
+
+	@Override public LogEntry get(int index) {
+		return buffer.entries[Objects.checkIndex(index, size)];
+	}
+
+	@Override public int size() { return size; }
+
+	/**
+	 * @return the entries as an {@link ImmutableList}, created on first use
+	 */
+	@Nonnull public ImmutableList<LogEntry> asImmutableList() {
+		ImmutableList<LogEntry> view = this.view;
+		if (view == null) {
+			view = ImmutableList.copyOf(Arrays.asList(buffer.entries).subList(0, size));
+			this.view = view;
+		}
+		return view;
+	}
+}
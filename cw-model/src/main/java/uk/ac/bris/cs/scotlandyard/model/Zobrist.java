@@ -0,0 +1,123 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import javax.annotation.Nonnull;
+
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.PIECES;
+import static uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory.TICKETS;
+
+/**
+ * 64-bit Zobrist keys for positions on a {@link CompiledGraph}.
+ * <br>
+ * A position's key is the xor of one key per piece location, one per (piece, ticket, count),
+ * one for the round and one for each piece still to move, so it can be updated incrementally
+ * as a move changes a few of them, see {@link MutableSearchState#key()}. Keys are derived from
+ * a fixed seed and what they stand for, and are the same in every run and thread.
+ * <br>
+ * Ticket counts below {@link #COUNTS} and rounds below {@link #ROUNDS} are looked up in tables;
+ * larger ones, which only long games or MrX collecting many detective tickets reach, are derived
+ * on the fly the same way, so every count and round has a key of its own.
+ */
+public final class Zobrist {
+
+	/**
+	 * Ticket counts with tabled keys
+	 */
+	public static final int COUNTS = 64;
+	/**
+	 * Rounds with tabled keys
+	 */
+	public static final int ROUNDS = 64;
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+	private static final long LOCATIONS_SEED = 0x5C07_1A4D_7A2DL;
+	private static final long TICKETS_SEED = mix(LOCATIONS_SEED + 1);
+	private static final long ROUNDS_SEED = mix(LOCATIONS_SEED + 2);
+	private static final long PIECES_SEED = mix(LOCATIONS_SEED + 3);
+
+	private static final LoadingCache<CompiledGraph, Zobrist> CACHE =
+			CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(Zobrist::new));
+
+	private final int nodes;
+	private final long[] locations;
+	private final long[] tickets;
+	private final long[] rounds;
+	private final long[] turns;
+
+	private Zobrist(CompiledGraph graph) {
+		nodes = graph.size();
+		locations = new long[PIECES * graph.size()];
+		for (int i = 0; i < locations.length; i++) locations[i] = key(LOCATIONS_SEED, i);
+		tickets = new long[PIECES * TICKETS * COUNTS];
+		for (int kind = 0; kind < PIECES * TICKETS; kind++)
+			for (int count = 0; count < COUNTS; count++)
+				tickets[kind * COUNTS + count] = ticketKey(kind, count);
+		rounds = new long[ROUNDS];
+		for (int i = 0; i < rounds.length; i++) rounds[i] = key(ROUNDS_SEED, i);
+		long[] pieces = new long[PIECES];
+		for (int i = 0; i < pieces.length; i++) pieces[i] = key(PIECES_SEED, i);
+		turns = new long[1 << PIECES];
+		for (int mask = 0; mask < turns.length; mask++)
+			for (int piece = 0; piece < PIECES; piece++)
+				if ((mask & (1 << piece)) != 0) turns[mask] ^= pieces[piece];
+	}
+
+	// the index-th SplitMix64 output from a seed
+	private static long key(long seed, long index) { return mix(seed + (index + 1) * GOLDEN); }
+
+	// kind is piece * TICKETS + ticket; counts interleave kinds so every count has its own index
+	private static long ticketKey(int kind, int count) {
+		return key(TICKETS_SEED, (long) count * (PIECES * TICKETS) + kind);
+	}
+
+	// SplitMix64 finaliser
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the keys for the graph, created once per graph
+	 */
+	@Nonnull public static Zobrist of(@Nonnull CompiledGraph graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	/**
+	 * @param piece the piece index in {@link ScotlandYard#ALL_PIECES}
+	 * @param index the dense node index
+	 * @return the key of the piece standing on the node
+	 */
+	public long location(int piece, int index) {
+		return locations[piece * nodes + index];
+	}
+
+	/**
+	 * @param piece the piece index in {@link ScotlandYard#ALL_PIECES}
+	 * @param ticket the ticket ordinal
+	 * @param count the number of tickets held
+	 * @return the key of the piece holding that many tickets
+	 */
+	public long tickets(int piece, int ticket, int count) {
+		int kind = piece * TICKETS + ticket;
+		return count < COUNTS ? tickets[kind * COUNTS + count] : ticketKey(kind, count);
+	}
+
+	/**
+	 * @param round the number of entries in MrX's travel log
+	 * @return the key of the round
+	 */
+	public long round(int round) {
+		return round < ROUNDS ? rounds[round] : key(ROUNDS_SEED, round);
+	}
+
+	/**
+	 * @param remaining bit mask of piece indices still to move
+	 * @return the key of the side to move
+	 */
+	public long turn(int remaining) { return turns[remaining]; }
+}
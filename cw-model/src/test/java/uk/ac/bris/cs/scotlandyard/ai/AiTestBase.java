@@ -0,0 +1,63 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Base class for the Ai tests. Contains the setups and helpers they share.
+ * This is not a test class and contains no tests here.
+ */
+abstract class AiTestBase {
+
+	/**
+	 * Four taxi tickets and nothing else, for small positions searched to the end
+	 */
+	static final ImmutableMap<Ticket, Integer> TAXIS = ImmutableMap.of(
+			Ticket.TAXI, 4, Ticket.BUS, 0, Ticket.UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+
+	private static GameSetup oneRound;
+	private static GameSetup revealFirst;
+	private static GameSetup standard;
+
+	@BeforeClass public static void setUp() throws IOException {
+		oneRound = new GameSetup(ScotlandYard.standardGraph(), ImmutableList.of(false));
+		revealFirst = new GameSetup(ScotlandYard.standardGraph(),
+				ImmutableList.of(true, false, false, false));
+		standard = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	/**
+	 * @return a setup of a single hidden round on the standard graph
+	 */
+	@Nonnull static GameSetup oneRoundSetup() { return oneRound; }
+
+	/**
+	 * @return a setup of four rounds on the standard graph, the first a reveal
+	 */
+	@Nonnull static GameSetup revealFirstSetup() { return revealFirst; }
+
+	/**
+	 * @return the standard 24 round setup
+	 */
+	@Nonnull static GameSetup standardSetup() { return standard; }
+
+	/**
+	 * @param seconds the timeout in seconds
+	 * @return the timeout as given to {@link uk.ac.bris.cs.scotlandyard.model.Ai#pickMove}
+	 */
+	@Nonnull static Pair<Long, TimeUnit> seconds(long seconds) {
+		return new Pair<>(seconds, TimeUnit.SECONDS);
+	}
+}
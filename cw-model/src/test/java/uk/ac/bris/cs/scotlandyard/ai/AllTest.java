@@ -0,0 +1,16 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all tests for the Ais; kept apart from the game model suite as some are timed
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		SearchesTest.class,
+		MonteCarloAiTest.class,
+		InformationSetAiTest.class,
+		AlphaBetaAiTest.class
+})
+public class AllTest {}
@@ -0,0 +1,99 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests the iterative-deepening alpha-beta Ai on small positions
+ */
+public class AlphaBetaAiTest extends AiTestBase {
+
+	private final AlphaBetaAi ai = new AlphaBetaAi(1 << 16, 64);
+
+	@After public void tearDown() { ai.onTerminate(); }
+
+	@Test public void testProvesTheOnlySafeNode() {
+		// RED at 1 covers 8 and 9, so only 32 survives the last round
+		GameState state = new MyGameStateFactory().build(oneRoundSetup(),
+				new Player(MRX, TAXIS, 19), ImmutableList.of(new Player(RED, TAXIS, 1)));
+		ai.onStart();
+		Move move = ai.pickMove(state, seconds(10));
+		int destination = move.accept(new Move.FunctionalVisitor<>(
+				m -> m.destination, m -> m.destination2));
+		assertThat(destination).isEqualTo(32);
+		assertThat(ai.lastSearch().proven()).isTrue();
+		assertThat(ai.lastSearch().score()).isPositive();
+	}
+
+	@Test public void testStopsAtMaxDepth() {
+		var shallow = new AlphaBetaAi(1 << 16, 4);
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, ScotlandYard.defaultDetectiveTickets(), 26),
+						new Player(BLUE, ScotlandYard.defaultDetectiveTickets(), 94)));
+		Move move = shallow.pickMove(state, seconds(30));
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(shallow.lastSearch().depth()).isEqualTo(4);
+		assertThat(shallow.lastSearch().proven()).isFalse();
+	}
+
+	@Test public void testStopsBeforeTimeout() {
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, ScotlandYard.defaultDetectiveTickets(), 26),
+						new Player(BLUE, ScotlandYard.defaultDetectiveTickets(), 94)));
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, new Pair<>(300L, TimeUnit.MILLISECONDS));
+		// the margin itself is checked in SearchesTest, this only catches a search that
+		// ignores its deadline, with room for a loaded machine
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(ai.lastSearch().depth()).isPositive();
+	}
+
+	@Test public void testFiveDetectivesStopBeforeTimeout() {
+		// rounds of five detectives run to thousands of joint moves, so these are searched one
+		// detective at a time; the first call, with a cold table, overran by seconds before
+		var detectives = ScotlandYard.defaultDetectiveTickets();
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, detectives, 26), new Player(BLUE, detectives, 94),
+						new Player(GREEN, detectives, 29), new Player(WHITE, detectives, 50),
+						new Player(YELLOW, detectives, 174)));
+		ai.onStart();
+		for (int i = 0; i < 2; i++) {
+			long start = System.nanoTime();
+			Move move = ai.pickMove(state, seconds(2));
+			assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(3000);
+			assertThat(state.getAvailableMoves()).contains(move);
+			assertThat(ai.lastSearch().depth()).isGreaterThanOrEqualTo(3);
+		}
+	}
+
+	@Test public void testDetectiveTurnPlaysAvailableMove() {
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, ScotlandYard.defaultDetectiveTickets(), 26)));
+		state = state.advance(state.getAvailableMoves().iterator().next());
+		assertThat(state.getAvailableMoves()).contains(ai.pickMove(state, seconds(1)));
+	}
+}
@@ -0,0 +1,103 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the information-set tree search detective Ai
+ */
+public class InformationSetAiTest extends AiTestBase {
+
+	private final InformationSetAi ai = new InformationSetAi(2, Math.sqrt(2), 2000);
+
+	@After public void tearDown() { ai.onTerminate(); }
+
+	private static Move taxi(int source, int destination) {
+		return new Move.SingleMove(MRX, source, TAXI, destination);
+	}
+
+	@Test public void testCapturesRevealedMrX() {
+		GameState state = new MyGameStateFactory().build(revealFirstSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 47)));
+		state = state.advance(taxi(45, 46));
+		ai.onStart();
+		Move move = ai.pickMove(state, seconds(10));
+		assertThat(move).isEqualTo(new Move.SingleMove(RED, 47, TAXI, 46));
+		assertThat(ai.belief().probabilityOf(46)).isEqualTo(1);
+		assertThat(ai.lastSearch().iterations()).isEqualTo(2000);
+	}
+
+	@Test public void testBeliefFollowsHiddenMoves() {
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 26),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		state = state.advance(taxi(45, 46));
+		ai.onStart();
+		Move move = ai.pickMove(state, seconds(10));
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(ai.belief().probabilityOf(46)).isPositive();
+		assertThat(ai.belief().probabilityOf(45)).isZero();
+	}
+
+	@Test public void testBeliefKeepsNodeDetectiveLeft() {
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 47)));
+		state = state.advance(taxi(45, 46));
+		ai.onStart();
+		ai.pickMove(state, seconds(10));
+		// RED leaves 47 and MrX moves onto it; the Ai only sees RED's turns
+		state = state.advance(new Move.SingleMove(RED, 47, TAXI, 62));
+		state = state.advance(taxi(46, 47));
+		ai.pickMove(state, seconds(10));
+		assertThat(ai.belief().probabilityOf(47)).isPositive();
+	}
+
+	@Test public void testSecondDetectiveContinuesThePlan() {
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 26),
+						new Player(BLUE, defaultDetectiveTickets(), 94)));
+		state = state.advance(taxi(45, 46));
+		ai.onStart();
+		state = state.advance(ai.pickMove(state, seconds(10)));
+		Move move = ai.pickMove(state, seconds(10));
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(ai.lastSearch().reused()).isPositive();
+	}
+
+	@Test public void testStopsBeforeTimeout() {
+		var unlimited = new InformationSetAi(2, Math.sqrt(2), 0);
+		try {
+			GameState state = new MyGameStateFactory().build(standardSetup(),
+					new Player(MRX, defaultMrXTickets(), 45),
+					ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 26)));
+			state = state.advance(taxi(45, 46));
+			long start = System.nanoTime();
+			Move move = unlimited.pickMove(state, new Pair<>(300L, TimeUnit.MILLISECONDS));
+			// only a search ignoring its deadline takes this long, see SearchesTest
+			assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+			assertThat(state.getAvailableMoves()).contains(move);
+		} finally { unlimited.onTerminate(); }
+	}
+}
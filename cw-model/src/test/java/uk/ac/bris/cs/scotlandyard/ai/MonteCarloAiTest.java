@@ -0,0 +1,83 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.headless.PlayoutEngine.Policy;
+import uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests the Monte-Carlo tree search Ai on small positions
+ */
+public class MonteCarloAiTest extends AiTestBase {
+
+	private final MonteCarloAi ai = new MonteCarloAi(new BitboardGameStateFactory(),
+			Policy.random(), 2, Math.sqrt(2), 3000);
+
+	@After public void tearDown() { ai.onTerminate(); }
+
+	@Test public void testEscapesTheOnlySafeNode() {
+		// RED at 1 covers 8 and 9, so only 32 survives the last round
+		GameState state = new MyGameStateFactory().build(oneRoundSetup(),
+				new Player(MRX, TAXIS, 19), ImmutableList.of(new Player(RED, TAXIS, 1)));
+		ai.onStart();
+		Move move = ai.pickMove(state, seconds(10));
+		assertThat(state.getAvailableMoves()).contains(move);
+		int destination = move.accept(new Move.FunctionalVisitor<>(
+				m -> m.destination, m -> m.destination2));
+		assertThat(destination).isEqualTo(32);
+		assertThat(ai.lastSearch().iterations()).isEqualTo(3000);
+		assertThat(ai.lastSearch().nodesPerSecond()).isPositive();
+	}
+
+	@Test public void testStopsBeforeTimeout() {
+		var unlimited = new MonteCarloAi(new BitboardGameStateFactory(), Policy.random(), 2,
+				Math.sqrt(2), 0);
+		try {
+			GameState state = new MyGameStateFactory().build(standardSetup(),
+					new Player(MRX, ScotlandYard.defaultMrXTickets(), 45),
+					ImmutableList.of(new Player(RED, ScotlandYard.defaultDetectiveTickets(), 26)));
+			long start = System.nanoTime();
+			Move move = unlimited.pickMove(state, new Pair<>(300L, TimeUnit.MILLISECONDS));
+			// generous, so a loaded machine does not fail it; SearchesTest checks the margin
+			assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+			assertThat(state.getAvailableMoves()).contains(move);
+			assertThat(unlimited.lastSearch().iterations()).isPositive();
+		} finally { unlimited.onTerminate(); }
+	}
+
+	@Test public void testReusesSubtreeAfterDetectiveReply() {
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, ScotlandYard.defaultDetectiveTickets(), 26)));
+		ai.onStart();
+		state = state.advance(ai.pickMove(state, seconds(10)));
+		// every reply to the most visited move has been tried
+		state = state.advance(state.getAvailableMoves().iterator().next());
+		Move move = ai.pickMove(state, seconds(10));
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(ai.lastSearch().reused()).isPositive();
+	}
+
+	@Test public void testDetectiveTurnPlaysAvailableMove() {
+		GameState state = new MyGameStateFactory().build(standardSetup(),
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, ScotlandYard.defaultDetectiveTickets(), 26)));
+		state = state.advance(state.getAvailableMoves().iterator().next());
+		assertThat(state.getAvailableMoves()).contains(ai.pickMove(state, seconds(1)));
+	}
+}
@@ -0,0 +1,58 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.atlassian.fugue.Pair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the time budgets and worker runs shared by the tree search Ais
+ */
+public class SearchesTest {
+
+	private final ExecutorService pool = Searches.newWorkers(3, "searches-test");
+
+	@After public void tearDown() { pool.shutdownNow(); }
+
+	@Test public void testDeadlineKeepsTenPercent() {
+		long deadline = Searches.deadline(1000, new Pair<>(10L, TimeUnit.SECONDS));
+		assertThat(deadline).isEqualTo(1000 + TimeUnit.SECONDS.toNanos(9));
+	}
+
+	@Test public void testDeadlineKeepsAtLeastFiftyMillis() {
+		long deadline = Searches.deadline(0, new Pair<>(300L, TimeUnit.MILLISECONDS));
+		assertThat(deadline).isEqualTo(TimeUnit.MILLISECONDS.toNanos(250));
+	}
+
+	@Test public void testDeadlineNeverBeforeStart() {
+		assertThat(Searches.deadline(42, new Pair<>(10L, TimeUnit.MILLISECONDS))).isEqualTo(42);
+	}
+
+	@Test public void testIterationLimitSplitBetweenWorkers() {
+		AtomicInteger[] runs = {new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+		long iterations = Searches.run(pool, 3, Long.MAX_VALUE, 10,
+				worker -> runs[worker]::incrementAndGet);
+		assertThat(iterations).isEqualTo(10);
+		assertThat(runs).extracting(AtomicInteger::get).containsExactly(4, 3, 3);
+	}
+
+	@Test public void testStopsAtDeadline() {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+		long iterations = Searches.run(pool, 3, deadline, 0, worker -> Thread::onSpinWait);
+		assertThat(iterations).isPositive();
+		assertThat(System.nanoTime()).isGreaterThanOrEqualTo(deadline);
+	}
+
+	@Test public void testFailingWorkerFailsTheRun() {
+		assertThatThrownBy(() -> Searches.run(pool, 3, Long.MAX_VALUE, 0, worker -> () -> {
+			if (worker == 0) throw new ArithmeticException();
+		})).isInstanceOf(IllegalStateException.class).hasCauseInstanceOf(ArithmeticException.class);
+	}
+}
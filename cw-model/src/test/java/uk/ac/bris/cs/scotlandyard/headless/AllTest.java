@@ -0,0 +1,15 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all tests for the command line tools
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		PerftTest.class,
+		PlayoutEngineTest.class,
+		TournamentRunnerTest.class
+})
+public class AllTest {}
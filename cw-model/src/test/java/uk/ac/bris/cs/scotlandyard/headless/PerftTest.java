@@ -0,0 +1,49 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the move tree counts
+ */
+public class PerftTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = Games.standardSetup();
+	}
+
+	private static GameState game(String factory) {
+		return Games.newGame(Games.factory(factory), setup, 2, 7);
+	}
+
+	@Test public void testShallowCountsMatchAvailableMoves() {
+		GameState root = game("my");
+		assertThat(Perft.count(root, 0)).isEqualTo(1);
+		assertThat(Perft.count(root, 1)).isEqualTo(root.getAvailableMoves().size());
+	}
+
+	@Test public void testFactoriesAgree() {
+		assertThat(Perft.count(game("my"), 3)).isEqualTo(Perft.count(game("bitboard"), 3));
+	}
+
+	@Test public void testDivideSumsToCount() {
+		GameState root = game("bitboard");
+		long total = Perft.count(root, 3);
+		assertThat(Perft.divide(root, 3).values().stream().mapToLong(Long::longValue).sum())
+				.isEqualTo(total);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertThat(Perft.divide(root, 3, pool)).isEqualTo(Perft.divide(root, 3));
+		} finally { pool.shutdown(); }
+	}
+}
@@ -0,0 +1,69 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.ac.bris.cs.scotlandyard.headless.PlayoutEngine.Policy;
+import uk.ac.bris.cs.scotlandyard.headless.PlayoutEngine.Result;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+/**
+ * Tests the headless playouts
+ */
+public class PlayoutEngineTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException { setup = Games.standardSetup(); }
+
+	@Test public void testPlaysEveryGameToTheEnd() throws InterruptedException {
+		var engine = new PlayoutEngine(Games.factory("my"), setup, 5,
+				Policy.random(), Policy.random());
+		Result result = engine.run(20, 1, 3);
+		assertThat(result.games()).isEqualTo(20);
+		assertThat(result.mrXWins() + result.detectiveWins()).isEqualTo(20);
+		assertThat(result.meanLength()).isGreaterThan(0);
+		assertThat(result.mrXWinRate() + result.detectiveWinRate()).isCloseTo(1, offset(1e-9));
+	}
+
+	@Test public void testSameSeedPlaysSameGamesOnAnyThreads() throws InterruptedException {
+		var engine = new PlayoutEngine(Games.factory("bitboard"), setup, 3,
+				Policy.random(), Policy.random());
+		Result a = engine.run(30, 7, 1);
+		Result b = engine.run(30, 7, 3);
+		assertThat(a.plies()).isEqualTo(b.plies());
+		assertThat(a.mrXWins()).isEqualTo(b.mrXWins());
+	}
+
+	@Test public void testPoliciesPickForTheirSide() throws InterruptedException {
+		AtomicInteger mrXCalls = new AtomicInteger();
+		AtomicInteger detectiveCalls = new AtomicInteger();
+		Policy mrX = (board, moves, random) -> {
+			assertThat(moves.get(0).commencedBy().isMrX()).isTrue();
+			mrXCalls.incrementAndGet();
+			return moves.get(0);
+		};
+		Policy detective = (board, moves, random) -> {
+			assertThat(moves.get(0).commencedBy().isDetective()).isTrue();
+			detectiveCalls.incrementAndGet();
+			return moves.get(moves.size() - 1);
+		};
+		Result result = new PlayoutEngine(Games.factory("bitboard"), setup, 2, mrX, detective)
+				.run(4, 3, 2);
+		assertThat((long) mrXCalls.get() + detectiveCalls.get()).isEqualTo(result.plies());
+		assertThat(mrXCalls.get()).isPositive();
+		assertThat(detectiveCalls.get()).isPositive();
+	}
+
+	@Test public void testRejectsBadDetectiveCount() {
+		assertThatThrownBy(() -> new PlayoutEngine(Games.factory("my"), setup, 6,
+				Policy.random(), Policy.random())).isInstanceOf(IllegalArgumentException.class);
+	}
+}
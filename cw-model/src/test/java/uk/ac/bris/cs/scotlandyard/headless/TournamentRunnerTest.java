@@ -0,0 +1,117 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.headless.TournamentRunner.Entrant;
+import uk.ac.bris.cs.scotlandyard.headless.TournamentRunner.GameResult;
+import uk.ac.bris.cs.scotlandyard.headless.TournamentRunner.Standings;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+/**
+ * Tests the round-robin tournament
+ */
+public class TournamentRunnerTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException { setup = Games.standardSetup(); }
+
+	private static Ai ai(String name, long sleepMillis) {
+		return new Ai() {
+			@Nonnull @Override public String name() { return name; }
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        Pair<Long, TimeUnit> timeoutPair) {
+				if (sleepMillis > 0) {
+					try {
+						Thread.sleep(sleepMillis);
+					} catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+				}
+				return board.getAvailableMoves().asList().get(0);
+			}
+		};
+	}
+
+	@Test public void testRoundRobinPlaysEveryPairingAndPersists() throws Exception {
+		var entrants = ImmutableList.of(
+				new Entrant("a", () -> ai("a", 0)),
+				new Entrant("b", () -> ai("b", 0)),
+				new Entrant("c", () -> ai("c", 0)));
+		Path results = folder.getRoot().toPath().resolve("results.tsv");
+		Standings standings = new TournamentRunner(Games.factory("bitboard"), setup, 2,
+				Duration.ofSeconds(5)).run(entrants, 2, 0, 2, results);
+		// 3 entrants, 6 ordered pairings, 2 seeds each
+		assertThat(standings.games()).hasSize(12);
+		assertThat(standings.games()).extracting(GameResult::index)
+				.containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+		assertThat(Files.readAllLines(results)).hasSize(12);
+		assertThat(standings.elo().keySet()).containsExactlyInAnyOrder("a", "b", "c");
+		assertThat(standings.elo().values().stream().mapToDouble(Double::doubleValue).sum())
+				.isCloseTo(3 * TournamentRunner.INITIAL_ELO, offset(1e-6));
+	}
+
+	@Test public void testSlowAiForfeits() throws Exception {
+		var entrants = ImmutableList.of(
+				new Entrant("fast", () -> ai("fast", 0)),
+				new Entrant("slow", () -> ai("slow", 10_000)));
+		Standings standings = new TournamentRunner(Games.factory("bitboard"), setup, 1,
+				Duration.ofMillis(50)).run(entrants, 1, 0, 2, null);
+		assertThat(standings.games()).hasSize(2);
+		assertThat(standings.games()).allSatisfy(game -> {
+			assertThat(game.winner()).isEqualTo("fast");
+			assertThat(game.forfeit()).isEqualTo("slow timed out");
+		});
+		assertThat(standings.winRate("fast")).isEqualTo(1);
+		assertThat(standings.elo().keySet()).containsExactly("fast", "slow");
+	}
+
+	@Test public void testTerminatesOnlyAfterTimedOutPickReturns() throws Exception {
+		// ignores interrupts and runs past its timeout, like a search that never checks them
+		AtomicBoolean picking = new AtomicBoolean();
+		AtomicBoolean terminatedWhilePicking = new AtomicBoolean();
+		Ai stubborn = new Ai() {
+			@Nonnull @Override public String name() { return "stubborn"; }
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        Pair<Long, TimeUnit> timeoutPair) {
+				picking.set(true);
+				long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(150);
+				while (System.nanoTime() < end) Thread.onSpinWait();
+				picking.set(false);
+				return board.getAvailableMoves().asList().get(0);
+			}
+			@Override public void onTerminate() {
+				if (picking.get()) terminatedWhilePicking.set(true);
+			}
+		};
+		var entrants = ImmutableList.of(
+				new Entrant("fast", () -> ai("fast", 0)),
+				new Entrant("stubborn", () -> stubborn));
+		Standings standings = new TournamentRunner(Games.factory("bitboard"), setup, 1,
+				Duration.ofMillis(100)).run(entrants, 1, 0, 1, null);
+		assertThat(standings.games()).allSatisfy(game ->
+				assertThat(game.forfeit()).isEqualTo("stubborn timed out"));
+		assertThat(terminatedWhilePicking).isFalse();
+	}
+}
@@ -15,6 +15,19 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
-		ModelObserverTest.class
+		ModelObserverTest.class,
+		GameTraceListenerTest.class,
+		CompiledGraphTest.class,
+		PackedMoveTest.class,
+		MutableSearchStateTest.class,
+		TranspositionTableTest.class,
+		MoveTableTest.class,
+		TravelLogTest.class,
+		PlayerTest.class,
+		DistanceOracleTest.class,
+		ReachabilityEngineTest.class,
+		MrXLocationTrackerTest.class,
+		MrXBeliefTest.class,
+		DetectiveRoundsTest.class
 })
 public class AllTest {}
@@ -0,0 +1,101 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the compiled graph against the Guava graph it was built from
+ */
+public class CompiledGraphTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> GRAPH;
+
+	@BeforeClass public static void setUp() {
+		ParameterisedModelTestBase.setUp();
+		GRAPH = ParameterisedModelTestBase.standardGraph();
+	}
+
+	@Test public void testCompiledOncePerGraph() {
+		assertThat(CompiledGraph.of(GRAPH)).isSameAs(CompiledGraph.of(GRAPH));
+	}
+
+	@Test public void testNodesAndEdgesMatchGraph() {
+		CompiledGraph graph = CompiledGraph.of(GRAPH);
+		assertThat(graph.size()).isEqualTo(GRAPH.nodes().size());
+		assertThat(graph.edges()).isEqualTo(2 * GRAPH.edges().size());
+		assertThat(graph.words()).isEqualTo(4);
+		for (int id : GRAPH.nodes()) {
+			int index = graph.index(id);
+			assertThat(graph.id(index)).isEqualTo(id);
+			List<Integer> neighbours = new ArrayList<>();
+			for (int e = graph.edgeStart(index); e < graph.edgeEnd(index); e++) {
+				int neighbour = graph.id(graph.target(e));
+				neighbours.add(neighbour);
+				int transports = 0;
+				for (Transport t : GRAPH.edgeValue(id, neighbour).orElseThrow())
+					transports |= CompiledGraph.mask(t);
+				assertThat(graph.transports(e)).isEqualTo(transports);
+				assertThat(graph.edge(index, graph.target(e))).isEqualTo(e);
+			}
+			assertThat(neighbours).containsExactlyInAnyOrderElementsOf(GRAPH.adjacentNodes(id));
+		}
+	}
+
+	@Test public void testUnknownIdHasNoIndex() {
+		CompiledGraph graph = CompiledGraph.of(GRAPH);
+		assertThat(graph.index(0)).isEqualTo(-1);
+		assertThat(graph.index(-1)).isEqualTo(-1);
+		assertThat(graph.index(1000)).isEqualTo(-1);
+	}
+
+	@Test public void testIndicesAbove32767() {
+		// a path over every id up to 0xFFFF, so the last targets need all 16 bits
+		var builder = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>immutable();
+		for (int id = 1; id < 0xFFFF; id++)
+			builder.putEdgeValue(id, id + 1, ImmutableSet.of(Transport.TAXI));
+		CompiledGraph graph = CompiledGraph.of(builder.build());
+		int last = graph.index(0xFFFF);
+		assertThat(last).isGreaterThan(Short.MAX_VALUE);
+		assertThat(graph.id(graph.target(graph.edgeStart(last)))).isEqualTo(0xFFFE);
+		assertThat(graph.edge(graph.index(0xFFFE), last)).isNotNegative();
+	}
+
+	@Test public void testFerryOnlyPayableBySecret() {
+		// 194 - 157 is a ferry route
+		CompiledGraph graph = CompiledGraph.of(GRAPH);
+		int edge = graph.edge(graph.index(194), graph.index(157));
+		assertThat(graph.transports(edge)).isEqualTo(CompiledGraph.mask(Transport.FERRY));
+		assertThat(graph.tickets(edge)).isEqualTo(CompiledGraph.mask(Ticket.SECRET));
+	}
+
+	@Test public void testNeighboursFilteredByTicket() {
+		CompiledGraph graph = CompiledGraph.of(GRAPH);
+		int source = graph.index(1);
+		int[] out = new int[graph.degree(source)];
+		int count = graph.neighbours(source, CompiledGraph.mask(Ticket.UNDERGROUND), out);
+		assertThat(Arrays.stream(out, 0, count).map(graph::id)).containsExactlyInAnyOrder(46);
+
+		List<Integer> viaBus = new ArrayList<>();
+		graph.forEachNeighbour(source, CompiledGraph.mask(Ticket.BUS), (target, tickets) -> {
+			assertThat(tickets).isEqualTo(CompiledGraph.mask(Ticket.BUS));
+			viaBus.add(graph.id(target));
+		});
+		assertThat(viaBus).containsExactlyInAnyOrder(46, 58);
+
+		count = graph.neighbours(source, CompiledGraph.mask(Ticket.SECRET), out);
+		assertThat(count).isEqualTo(GRAPH.adjacentNodes(1).size());
+	}
+}
@@ -0,0 +1,149 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.blackPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.bluePlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.greenPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.redPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.standard24MoveSetup;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.standardGraph;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.whitePlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.yellowPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests that joint detective rounds reach exactly the positions of playing the detectives one at
+ * a time, each once
+ */
+public class DetectiveRoundsTest {
+
+	private static final ImmutableMap<Ticket, Integer> TAXIS = ImmutableMap.of(
+			Ticket.TAXI, 4, Ticket.BUS, 0, Ticket.UNDERGROUND, 0, Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+
+	@BeforeClass public static void setUp() { ParameterisedModelTestBase.setUp(); }
+
+	// the positions at the end of the round, one detective at a time; transpositions are walked once
+	private static void sequential(MutableSearchState state, Set<Long> visited, Set<Long> ends,
+	                               Set<Long> captures) {
+		if (!visited.add(state.key())) return;
+		if (state.isMrXTurn() || state.isGameOver()) {
+			ends.add(state.key());
+			return;
+		}
+		MoveList moves = new MoveList();
+		state.generate(moves);
+		for (int i = 0; i < moves.size(); i++) {
+			long move = moves.get(i);
+			state.make(move);
+			if (state.detectivesWin()) captures.add(move);
+			else sequential(state, visited, ends, captures);
+			state.unmake();
+		}
+	}
+
+	private static void assertMatchesSequential(MutableSearchState state) {
+		Set<Long> ends = new HashSet<>(), captures = new HashSet<>();
+		sequential(state, new HashSet<>(), ends, captures);
+		long key = state.key();
+
+		DetectiveRounds rounds = new DetectiveRounds();
+		int count = rounds.generate(state);
+		assertThat(state.key()).isEqualTo(key);
+		Set<Long> jointEnds = new HashSet<>(), jointCaptures = new HashSet<>();
+		for (int round = 0; round < count; round++) {
+			rounds.make(state, round);
+			assertThat(state.isMrXTurn() || state.isGameOver()).isTrue();
+			if (state.detectivesWin()) {
+				assertThat(rounds.length(round)).isEqualTo(1);
+				jointCaptures.add(rounds.move(round, 0));
+			} else assertThat(jointEnds.add(state.key())).isTrue();
+			rounds.unmake(state, round);
+			assertThat(state.key()).isEqualTo(key);
+		}
+		assertThat(jointEnds).isEqualTo(ends);
+		assertThat(jointCaptures).isEqualTo(captures);
+		assertThat(count).isEqualTo(ends.size() + captures.size());
+	}
+
+	private static MutableSearchState afterMrX(GameState state, int mrXLocation) {
+		return MutableSearchState.of(state, mrXLocation);
+	}
+
+	@Test public void testMatchesOneAtATimeThroughWholeGames() {
+		Random random = new Random(5);
+		for (int game = 0; game < 2; game++) {
+			GameState start = new BitboardGameStateFactory().build(standard24MoveSetup(),
+					blackPlayer(), redPlayer(), greenPlayer(), bluePlayer(), whitePlayer(),
+					yellowPlayer());
+			MutableSearchState state = MutableSearchState.of(start);
+			MoveList moves = new MoveList();
+			while (!state.isGameOver()) {
+				if (!state.isMrXTurn()) assertMatchesSequential(state);
+				moves.clear();
+				state.generate(moves);
+				state.make(moves.get(random.nextInt(moves.size())));
+			}
+		}
+	}
+
+	@Test public void testFollowersAndStrandedDetectives() {
+		// BLUE at 8 must leave before RED at 1 can take it; BLUE and GREEN can fill 8 and 9
+		// around RED
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(standardGraph(), ImmutableList.of(false, false)),
+				new Player(MRX, TAXIS, 45),
+				ImmutableList.of(new Player(RED, TAXIS, 1), new Player(BLUE, TAXIS, 8),
+						new Player(GREEN, TAXIS, 20)));
+		state = state.advance(new Move.SingleMove(MRX, 45, Ticket.TAXI, 46));
+		assertMatchesSequential(afterMrX(state, 46));
+	}
+
+	@Test public void testContinuesMidRound() {
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(standardGraph(), ImmutableList.of(false, false)),
+				new Player(MRX, TAXIS, 45),
+				ImmutableList.of(new Player(RED, TAXIS, 1), new Player(BLUE, TAXIS, 19),
+						new Player(GREEN, TAXIS, 20)));
+		state = state.advance(new Move.SingleMove(MRX, 45, Ticket.TAXI, 46));
+		state = state.advance(new Move.SingleMove(BLUE, 19, Ticket.TAXI, 8));
+		assertMatchesSequential(afterMrX(state, 46));
+	}
+
+	@Test public void testCapturesAreRoundsOfTheirOwn() {
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(standardGraph(), ImmutableList.of(false, false)),
+				new Player(MRX, TAXIS, 45),
+				ImmutableList.of(new Player(RED, TAXIS, 47), new Player(BLUE, TAXIS, 34)));
+		state = state.advance(new Move.SingleMove(MRX, 45, Ticket.TAXI, 46));
+		MutableSearchState search = afterMrX(state, 46);
+		DetectiveRounds rounds = new DetectiveRounds();
+		rounds.generate(search);
+		assertThat(rounds.length(0)).isEqualTo(1);
+		assertThat(rounds.move(0, 0)).isEqualTo(PackedMove.single(1, 47, Ticket.TAXI.ordinal(), 46));
+		assertMatchesSequential(search);
+	}
+
+	@Test public void testMrXTurnThrows() {
+		GameState state = new BitboardGameStateFactory().build(standard24MoveSetup(),
+				blackPlayer(), redPlayer());
+		assertThatThrownBy(() -> new DetectiveRounds().generate(MutableSearchState.of(state)))
+				.isInstanceOf(IllegalStateException.class);
+	}
+}
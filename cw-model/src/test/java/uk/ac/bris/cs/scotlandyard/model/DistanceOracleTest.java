@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+
+/**
+ * Tests the all-pairs distance tables
+ */
+public class DistanceOracleTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> standard;
+	private static CompiledGraph graph;
+	private static DistanceOracle oracle;
+
+	private static final int ROAD = CompiledGraph.mask(TAXI) | CompiledGraph.mask(BUS)
+			| CompiledGraph.mask(UNDERGROUND);
+	private static final int ALL = ROAD | CompiledGraph.mask(SECRET);
+
+	@BeforeClass public static void setUp() {
+		ParameterisedModelTestBase.setUp();
+		standard = ParameterisedModelTestBase.standardGraph();
+		graph = CompiledGraph.of(standard);
+		oracle = DistanceOracle.of(graph);
+	}
+
+	// plain BFS over the Guava graph along edges with one of the given transports
+	private static Map<Integer, Integer> bfs(int source, ImmutableSet<Transport> usable) {
+		Map<Integer, Integer> distances = new HashMap<>();
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		distances.put(source, 0);
+		queue.add(source);
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			for (int next : standard.adjacentNodes(node)) {
+				if (distances.containsKey(next)) continue;
+				var transports = standard.edgeValue(node, next).orElseThrow();
+				if (transports.stream().noneMatch(usable::contains)) continue;
+				distances.put(next, distances.get(node) + 1);
+				queue.add(next);
+			}
+		}
+		return distances;
+	}
+
+	@Test public void testMatchesBreadthFirstSearch() {
+		for (int source : new int[]{1, 67, 108, 194}) {
+			Map<Integer, Integer> taxi = bfs(source, ImmutableSet.of(Transport.TAXI));
+			Map<Integer, Integer> all = bfs(source, ImmutableSet.copyOf(Transport.values()));
+			for (int target : standard.nodes()) {
+				assertThat(oracle.distanceBetween(source, target, CompiledGraph.mask(TAXI)))
+						.isEqualTo(taxi.getOrDefault(target, DistanceOracle.UNREACHABLE));
+				assertThat(oracle.distanceBetween(source, target, ALL))
+						.isEqualTo(all.getOrDefault(target, DistanceOracle.UNREACHABLE));
+			}
+		}
+	}
+
+	@Test public void testFerryNeedsSecretTicket() {
+		// 194 and 157 are joined by a ferry
+		assertThat(oracle.distanceBetween(194, 157, ALL)).isEqualTo(1);
+		assertThat(oracle.distanceBetween(194, 157, ROAD)).isGreaterThan(1);
+		assertThat(oracle.distanceBetween(1, 1, 0)).isZero();
+		assertThat(oracle.distanceBetween(1, 8, 0)).isEqualTo(DistanceOracle.UNREACHABLE);
+	}
+
+	@Test public void testLoadWritesAndMapsCacheFile() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		DistanceOracle written = DistanceOracle.load(graph, directory);
+		Path file = directory.resolve(String.format("distances-%016x.bin", graph.fingerprint()));
+		assertThat(file).exists();
+		DistanceOracle mapped = DistanceOracle.load(graph, directory);
+		// a broken file is replaced; a new file, as the old one is still mapped
+		Files.delete(file);
+		Files.write(file, new byte[]{1, 2, 3});
+		DistanceOracle rewritten = DistanceOracle.load(graph, directory);
+		for (int from = 0; from < graph.size(); from += 7)
+			for (int to = 0; to < graph.size(); to += 3)
+				for (int mask : new int[]{CompiledGraph.mask(TAXI), ROAD, ALL}) {
+					int expected = oracle.distance(from, to, mask);
+					assertThat(written.distance(from, to, mask)).isEqualTo(expected);
+					assertThat(mapped.distance(from, to, mask)).isEqualTo(expected);
+					assertThat(rewritten.distance(from, to, mask)).isEqualTo(expected);
+				}
+	}
+}
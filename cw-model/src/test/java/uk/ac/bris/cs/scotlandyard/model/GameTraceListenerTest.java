@@ -0,0 +1,122 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameTraceListener.WinReason;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests the events MyGameState reports to a {@link GameTraceListener}
+ */
+public class GameTraceListenerTest {
+
+	private static GameSetup twoRounds;
+
+	@BeforeClass public static void setUp() throws IOException {
+		twoRounds = new GameSetup(ScotlandYard.standardGraph(), ImmutableList.of(false, false));
+	}
+
+	// records every event in the order it arrives
+	private static final class Recording implements GameTraceListener {
+		final List<String> events = new ArrayList<>();
+		final List<GameState> states = new ArrayList<>();
+		final List<Move> moves = new ArrayList<>();
+		WinReason reason;
+		ImmutableSet<Piece> winner;
+
+		@Override public void onStateCreated(@Nonnull GameState state) {
+			events.add("created");
+			states.add(state);
+		}
+
+		@Override public void onWinnerDecided(@Nonnull GameState state,
+		                                      @Nonnull ImmutableSet<Piece> winner,
+		                                      @Nonnull WinReason reason) {
+			events.add("winner");
+			this.winner = winner;
+			this.reason = reason;
+		}
+
+		@Override public void onMoveApplied(@Nonnull GameState before,
+		                                    @Nonnull Move move,
+		                                    @Nonnull GameState after) {
+			events.add("move");
+			moves.add(move);
+		}
+	}
+
+	private static GameState start(Recording recording) {
+		return new MyGameStateFactory(recording).build(twoRounds,
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 19),
+				ImmutableList.of(new Player(RED, ScotlandYard.defaultDetectiveTickets(), 1)));
+	}
+
+	private static int destination(Move move) {
+		return move.accept(new Move.FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+	}
+
+	@Test public void testReportsCreatedStatesAndMoves() {
+		var recording = new Recording();
+		GameState state = start(recording);
+		assertThat(recording.events).containsExactly("created");
+		assertThat(recording.states).containsExactly(state);
+
+		Move move = state.getAvailableMoves().iterator().next();
+		GameState next = state.advance(move);
+		assertThat(recording.events).containsExactly("created", "created", "move");
+		assertThat(recording.states).containsExactly(state, next);
+		assertThat(recording.moves).containsExactly(move);
+		assertThat(recording.reason).isNull();
+	}
+
+	@Test public void testReportsCapture() {
+		var recording = new Recording();
+		GameState state = start(recording);
+		// MrX moves next to RED, say to 9, then RED lands on him
+		for (Move mrX : state.getAvailableMoves()) {
+			GameState afterMrX = state.advance(mrX);
+			for (Move red : afterMrX.getAvailableMoves()) {
+				if (destination(red) != destination(mrX)) continue;
+				recording.events.clear();
+				GameState end = afterMrX.advance(red);
+				assertThat(recording.events).containsExactly("created", "winner", "move");
+				assertThat(recording.reason).isEqualTo(WinReason.MRX_CAPTURED);
+				assertThat(recording.winner).isEqualTo(end.getWinner());
+				return;
+			}
+		}
+		throw new AssertionError("no capture found from the start");
+	}
+
+	@Test public void testReportsRoundsComplete() {
+		var recording = new Recording();
+		GameState state = start(recording);
+		// MrX wins with his last move if the detectives keep away from him
+		for (int round = 0; round < 2; round++) {
+			assertThat(recording.reason).isNull();
+			Move mrX = state.getAvailableMoves().iterator().next();
+			state = state.advance(mrX);
+			if (!state.getWinner().isEmpty()) break;
+			state = state.advance(state.getAvailableMoves().stream()
+					.filter(m -> destination(m) != destination(mrX))
+					.findFirst().orElseThrow());
+		}
+		assertThat(recording.events).endsWith("created", "winner", "move");
+		assertThat(recording.reason).isEqualTo(WinReason.ROUNDS_COMPLETE);
+		assertThat(recording.winner).containsExactly(MRX).isEqualTo(state.getWinner());
+	}
+}
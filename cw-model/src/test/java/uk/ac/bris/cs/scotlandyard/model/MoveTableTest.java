@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+
+/**
+ * Tests the precomputed move lists
+ */
+public class MoveTableTest {
+
+	private static CompiledGraph graph;
+	private static MoveTable table;
+
+	@BeforeClass public static void setUp() {
+		ParameterisedModelTestBase.setUp();
+		graph = CompiledGraph.of(ParameterisedModelTestBase.standardGraph());
+		table = MoveTable.of(graph);
+	}
+
+	private static Move[] decode(long[] moves) {
+		return Arrays.stream(moves).mapToObj(PackedMove::decode).toArray(Move[]::new);
+	}
+
+	@Test public void testSinglesFilteredByHeldTickets() {
+		int node = graph.index(1);
+		assertThat(decode(table.singles(node, CompiledGraph.mask(BUS)))).containsExactlyInAnyOrder(
+				ParameterisedModelTestBase.bus(MRX, 1, 46),
+				ParameterisedModelTestBase.bus(MRX, 1, 58));
+		assertThat(decode(table.singles(node, CompiledGraph.mask(UNDERGROUND))))
+				.containsExactly(ParameterisedModelTestBase.underground(MRX, 1, 46));
+		assertThat(table.singles(node, CompiledGraph.mask(Ticket.DOUBLE))).isEmpty();
+	}
+
+	@Test public void testForPieceKeepsMove() {
+		long move = table.singles(graph.index(1), CompiledGraph.mask(TAXI))[0];
+		Move red = PackedMove.decode(MoveTable.forPiece(move, 1));
+		assertThat(red.commencedBy()).isEqualTo(RED);
+		assertThat(red.source()).isEqualTo(1);
+	}
+
+	@Test public void testDoublesIncludeRepeatedTickets() {
+		int node = graph.index(194);
+		int held = CompiledGraph.mask(SECRET);
+		long[] doubles = table.doubles(node, held);
+		assertThat(decode(doubles)).contains(ParameterisedModelTestBase.x2(MRX, 194,
+				SECRET, 157, SECRET, 194));
+		// every first step is one of the single moves
+		long[] singles = table.singles(node, held);
+		for (long move : doubles) {
+			long first = PackedMove.single(0, 194, PackedMove.ticket1Ordinal(move),
+					PackedMove.destination1(move));
+			assertThat(singles).contains(first);
+		}
+	}
+
+	@Test public void testListsAreBuiltOnce() {
+		int held = CompiledGraph.mask(TAXI) | CompiledGraph.mask(BUS);
+		assertThat(table.singles(5, held)).isSameAs(table.singles(5, held));
+		assertThat(table.doubles(5, held)).isSameAs(table.doubles(5, held | CompiledGraph.mask(Ticket.DOUBLE)));
+	}
+
+	@Test public void testDecodeSharesSingleMoves() {
+		long move = PackedMove.single(1, 1, TAXI.ordinal(), 8);
+		Move decoded = table.decode(move);
+		assertThat(decoded).isEqualTo(ParameterisedModelTestBase.taxi(RED, 1, 8));
+		assertThat(table.decode(move)).isSameAs(decoded);
+		// constructed moves still compare equal to the shared instance
+		assertThat(new Move.SingleMove(RED, 1, TAXI, 8)).isEqualTo(decoded);
+		// not an edge of the map, so nothing to share
+		long offMap = PackedMove.single(1, 1, TAXI.ordinal(), 2);
+		assertThat(table.decode(offMap)).isNotSameAs(table.decode(offMap));
+	}
+}
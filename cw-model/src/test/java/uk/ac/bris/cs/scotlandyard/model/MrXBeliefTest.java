@@ -0,0 +1,131 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the MrX belief against route counts and the candidate set of {@link MrXLocationTracker}
+ */
+public class MrXBeliefTest extends ParameterisedModelTestBase {
+
+	private static final Ticket[] TAXI_TAXI = {Ticket.TAXI, Ticket.TAXI};
+
+	// number of routes from source using the given tickets in order, by end node id
+	private static Map<Integer, Integer> routes(int source, Ticket[] tickets) {
+		Map<Integer, Integer> counts = new HashMap<>(Map.of(source, 1));
+		for (Ticket ticket : tickets) {
+			Map<Integer, Integer> next = new HashMap<>();
+			counts.forEach((node, count) -> {
+				for (int neighbour : standardGraph().adjacentNodes(node)) {
+					boolean payable = ticket == Ticket.SECRET || standardGraph()
+							.edgeValue(node, neighbour).orElseThrow().stream()
+							.anyMatch(t -> t.requiredTicket() == ticket);
+					if (payable) next.merge(neighbour, count, Integer::sum);
+				}
+			});
+			counts = next;
+		}
+		return counts;
+	}
+
+	@Test public void testHiddenMovesWeightNodesByRouteCount() {
+		var belief = new MrXBelief(standard24MoveSetup(), ImmutableSet.of(1),
+				MrXBelief.Behaviour.routes());
+		for (Ticket ticket : TAXI_TAXI) belief.observe(LogEntry.hidden(ticket), null);
+		Map<Integer, Integer> routes = routes(1, TAXI_TAXI);
+		double total = routes.values().stream().mapToInt(Integer::intValue).sum();
+		for (int id : standardGraph().nodes())
+			assertThat(belief.probabilityOf(id))
+					.isCloseTo(routes.getOrDefault(id, 0) / total, within(1e-12));
+	}
+
+	@Test public void testRevealCollapsesAndDetectivesRenormalise() {
+		var belief = new MrXBelief(standard24MoveSetup(), ImmutableSet.of(1, 194),
+				MrXBelief.Behaviour.routes());
+		belief.observe(LogEntry.reveal(Ticket.TAXI, 194), null);
+		assertThat(belief.probabilityOf(194)).isEqualTo(1);
+		belief.observe(LogEntry.hidden(Ticket.SECRET), null);
+		for (int id : new int[]{157, 192, 193, 195})
+			assertThat(belief.probabilityOf(id)).isCloseTo(0.25, within(1e-12));
+		long[] occupancy = new long[belief.graph().words()];
+		int index = belief.graph().index(195);
+		occupancy[index >>> 6] |= 1L << index;
+		belief.detectivesAt(occupancy);
+		assertThat(belief.probabilityOf(195)).isZero();
+		assertThat(belief.probabilityOf(157)).isCloseTo(1 / 3.0, within(1e-12));
+	}
+
+	@Test public void testBehaviourWeightsEdges() {
+		int ferry = CompiledGraph.of(standardGraph()).index(157);
+		var belief = new MrXBelief(standard24MoveSetup(), ImmutableSet.of(194),
+				(from, to, ticket) -> to == ferry ? 5 : 1);
+		belief.observe(LogEntry.hidden(Ticket.SECRET), null);
+		assertThat(belief.probabilityOf(157)).isCloseTo(5 / 8.0, within(1e-12));
+		assertThat(belief.mostLikely()).isEqualTo(ferry);
+		var copy = MrXBelief.copyOf(belief);
+		belief.observe(LogEntry.reveal(Ticket.TAXI, 1), null);
+		assertThat(copy.probabilityOf(157)).isCloseTo(5 / 8.0, within(1e-12));
+		belief.copyFrom(copy);
+		assertThat(belief.probabilityOf(1)).isZero();
+		assertThat(belief.applied()).isEqualTo(1);
+	}
+
+	@Test public void testUpdatesOnDetectiveTurnsKeepNodeDetectiveLeft() {
+		var setup = new GameSetup(standardGraph(), moves(false, false, false));
+		GameState state = gameStateFactory.build(setup,
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 19)));
+		var belief = new MrXBelief(setup, ImmutableSet.of(1), MrXBelief.Behaviour.routes());
+		// the detective only sees the boards on its own turns, MrX moves onto the node it left
+		state = state.advance(taxi(MRX, 1, 8));
+		belief.update(state);
+		state = state.advance(taxi(RED, 19, 9));
+		state = state.advance(taxi(MRX, 8, 19));
+		belief.update(state);
+		assertThat(belief.probabilityOf(19)).isPositive();
+		assertThat(belief.probabilityOf(9)).isZero();
+	}
+
+	@Test public void testSupportMatchesTrackerDuringGame() {
+		Random random = new Random(7);
+		SplittableRandom sampler = new SplittableRandom(7);
+		Model model = modelFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer(),
+				greenPlayer(), bluePlayer(), whitePlayer(), yellowPlayer());
+		var tracker = new MrXLocationTracker(model.getCurrentBoard().getSetup());
+		var belief = new MrXBelief(model.getCurrentBoard().getSetup());
+		model.registerObserver(tracker);
+		model.registerObserver(belief);
+		CompiledGraph graph = belief.graph();
+		while (model.getCurrentBoard().getWinner().isEmpty()) {
+			ImmutableList<Move> moves = model.getCurrentBoard().getAvailableMoves().asList();
+			Move move = moves.get(random.nextInt(moves.size()));
+			if (move.commencedBy().isMrX())
+				assertThat(belief.probabilityOf(move.source())).isPositive();
+			model.chooseMove(move);
+			double total = 0;
+			for (int i = 0; i < graph.size(); i++) {
+				total += belief.probability(i);
+				assertThat(belief.probability(i) > 0).isEqualTo(tracker.contains(graph.id(i)));
+			}
+			assertThat(total).isCloseTo(1, within(1e-9));
+			assertThat(tracker.contains(graph.id(belief.sample(sampler)))).isTrue();
+		}
+	}
+}
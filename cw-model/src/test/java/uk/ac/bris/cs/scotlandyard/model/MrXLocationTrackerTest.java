@@ -0,0 +1,103 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the MrX location tracker against the real location in played games
+ */
+public class MrXLocationTrackerTest extends ParameterisedModelTestBase {
+
+	@Test public void testTrackerAlwaysContainsMrX() {
+		Random random = new Random(42);
+		for (int game = 0; game < 5; game++) {
+			Model model = modelFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer(),
+					greenPlayer(), bluePlayer(), whitePlayer(), yellowPlayer());
+			var tracker = new MrXLocationTracker(model.getCurrentBoard().getSetup());
+			model.registerObserver(tracker);
+			while (model.getCurrentBoard().getWinner().isEmpty()) {
+				ImmutableList<Move> moves = model.getCurrentBoard().getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) assertThat(tracker.contains(move.source())).isTrue();
+				model.chooseMove(move);
+				assertThat(tracker.applied())
+						.isEqualTo(model.getCurrentBoard().getMrXTravelLog().size());
+			}
+		}
+	}
+
+	@Test public void testSecretMoveExpandsOverFerryAndAvoidsDetectives() {
+		GameState state = gameStateFactory.build(new GameSetup(standardGraph(), moves(false, false)),
+				new Player(MRX, defaultMrXTickets(), 194),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 197),
+						new Player(GREEN, defaultDetectiveTickets(), 192)));
+		var tracker = new MrXLocationTracker(state.getSetup(), ImmutableSet.of(194));
+		state = state.advance(secret(MRX, 194, 157));
+		tracker.update(state);
+		assertThat(tracker.candidates()).containsExactlyInAnyOrder(157, 193, 195);
+		assertThat(tracker.count()).isEqualTo(3);
+		// RED moving onto a candidate removes it
+		state = state.advance(taxi(RED, 197, 195));
+		tracker.update(state);
+		assertThat(tracker.candidates()).containsExactlyInAnyOrder(157, 193);
+	}
+
+	@Test public void testCatchUpBlocksByLocationsWhenMrXMoved() {
+		var setup = new GameSetup(standardGraph(), moves(false, false, false));
+		GameState state = gameStateFactory.build(setup,
+				new Player(MRX, defaultMrXTickets(), 194),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 197),
+						new Player(GREEN, defaultDetectiveTickets(), 192)));
+		var tracker = new MrXLocationTracker(state.getSetup(), ImmutableSet.of(194));
+		tracker.update(state);
+		// MrX passes through 195 before RED moves onto it; 182 is only reachable through 195
+		state = state.advance(x2(MRX, 194, Ticket.TAXI, 195, Ticket.TAXI, 182));
+		state = state.advance(taxi(RED, 197, 195));
+		tracker.update(state);
+		assertThat(tracker.contains(182)).isTrue();
+		assertThat(tracker.contains(195)).isFalse();
+	}
+
+	@Test public void testUpdatesOnDetectiveTurnsKeepNodeDetectiveLeft() {
+		var setup = new GameSetup(standardGraph(), moves(false, false, false));
+		GameState state = gameStateFactory.build(setup,
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 19)));
+		var tracker = new MrXLocationTracker(state.getSetup(), ImmutableSet.of(1));
+		// the detective only sees the boards on its own turns
+		state = state.advance(taxi(MRX, 1, 8));
+		tracker.update(state);
+		state = state.advance(taxi(RED, 19, 9));
+		state = state.advance(taxi(MRX, 8, 19));
+		tracker.update(state);
+		assertThat(tracker.contains(19)).isTrue();
+	}
+
+	@Test public void testRevealResetsAndNewGameRestarts() {
+		GameState start = gameStateFactory.build(new GameSetup(standardGraph(), moves(true, false)),
+				new Player(MRX, defaultMrXTickets(), 45),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 111)));
+		var tracker = new MrXLocationTracker(start.getSetup());
+		GameState state = start.advance(taxi(MRX, 45, 46));
+		tracker.update(state);
+		assertThat(tracker.candidates()).containsExactly(46);
+		tracker.update(start);
+		assertThat(tracker.applied()).isZero();
+		assertThat(tracker.candidates()).containsExactlyInAnyOrderElementsOf(
+				ScotlandYard.MRX_LOCATIONS);
+	}
+}
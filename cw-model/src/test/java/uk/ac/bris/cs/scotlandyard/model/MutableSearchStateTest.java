@@ -0,0 +1,119 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.blackPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.bluePlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.greenPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.redPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.standard24MoveSetup;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.whitePlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.yellowPlayer;
+
+/**
+ * Tests that make/unmake on the search state agrees with {@link GameState#advance(Move)}
+ */
+public class MutableSearchStateTest {
+
+	@BeforeClass public static void setUp() { ParameterisedModelTestBase.setUp(); }
+
+	private static GameState newGame() {
+		return new BitboardGameStateFactory().build(standard24MoveSetup(), blackPlayer(),
+				redPlayer(), greenPlayer(), bluePlayer(), whitePlayer(), yellowPlayer());
+	}
+
+	@Test public void testMakeMatchesAdvanceThroughWholeGames() {
+		Random random = new Random(7);
+		for (int game = 0; game < 20; game++) {
+			GameState state = newGame();
+			MutableSearchState search = MutableSearchState.of(state);
+			MoveList moves = new MoveList();
+			while (state.getWinner().isEmpty()) {
+				moves.clear();
+				search.generate(moves);
+				assertThat(moves.toMoves()).isEqualTo(state.getAvailableMoves());
+				long move = moves.get(random.nextInt(moves.size()));
+				state = state.advance(PackedMove.decode(move));
+				search.make(move);
+				assertSameAs(search, state);
+			}
+			assertThat(search.isGameOver()).isTrue();
+			assertThat(search.mrXWins()).isEqualTo(state.getWinner().contains(Piece.MrX.MRX));
+		}
+	}
+
+	@Test public void testUnmakeRestoresEveryPosition() {
+		Random random = new Random(11);
+		GameState state = newGame();
+		MutableSearchState search = MutableSearchState.of(state);
+		List<GameState> path = new ArrayList<>();
+		MoveList moves = new MoveList();
+		while (!search.isGameOver()) {
+			path.add(state);
+			moves.clear();
+			search.generate(moves);
+			long move = moves.get(random.nextInt(moves.size()));
+			state = state.advance(PackedMove.decode(move));
+			search.make(move);
+		}
+		assertThat(search.ply()).isEqualTo(path.size());
+		for (int i = path.size() - 1; i >= 0; i--) {
+			search.unmake();
+			assertSameAs(search, path.get(i));
+		}
+		assertThatThrownBy(search::unmake).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testCopyIsIndependent() {
+		GameState state = newGame();
+		MutableSearchState search = MutableSearchState.of(state);
+		MutableSearchState copy = search.copy();
+		MoveList moves = new MoveList();
+		copy.generate(moves);
+		copy.make(moves.get(0));
+		assertSameAs(search, state);
+		assertThat(copy.ply()).isEqualTo(1);
+	}
+
+	@Test public void testDetectiveBoardNeedsMrXLocation() {
+		GameState state = newGame();
+		state = state.advance(state.getAvailableMoves().iterator().next());
+		GameState detectivesTurn = state;
+		assertThatThrownBy(() -> MutableSearchState.of(detectivesTurn))
+				.isInstanceOf(IllegalArgumentException.class);
+		MutableSearchState search = MutableSearchState.of(detectivesTurn, 1);
+		assertThat(search.location(Piece.MrX.MRX)).isEqualTo(1);
+		assertThat(search.isMrXTurn()).isFalse();
+	}
+
+	private static void assertSameAs(MutableSearchState search, GameState state) {
+		assertThat(search.isGameOver()).isEqualTo(!state.getWinner().isEmpty());
+		assertThat(search.round()).isEqualTo(state.getMrXTravelLog().size());
+		for (int i = 0; i < search.round(); i++)
+			assertThat(search.logEntry(i)).isEqualTo(state.getMrXTravelLog().get(i));
+		for (Piece piece : ScotlandYard.ALL_PIECES) {
+			var tickets = state.getPlayerTickets(piece);
+			if (tickets.isEmpty()) continue;
+			for (Ticket ticket : Ticket.values())
+				assertThat(search.ticketCount(piece, ticket))
+						.isEqualTo(tickets.get().getCount(ticket));
+			if (piece.isDetective())
+				assertThat(search.location(piece))
+						.isEqualTo(state.getDetectiveLocation((Piece.Detective) piece).orElseThrow());
+		}
+		if (!state.getWinner().isEmpty()) return;
+		MoveList moves = new MoveList();
+		search.generate(moves);
+		assertThat(moves.toMoves()).isEqualTo(state.getAvailableMoves());
+	}
+}
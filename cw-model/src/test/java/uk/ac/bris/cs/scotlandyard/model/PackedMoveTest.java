@@ -0,0 +1,80 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+
+/**
+ * Tests the packed move encoding and packed move generation
+ */
+public class PackedMoveTest extends ParameterisedModelTestBase {
+
+	@Test public void testRoundTrip() {
+		for (Move move : ImmutableList.of(
+				taxi(MRX, 1, 8),
+				bus(RED, 199, 128),
+				underground(BLUE, 67, 89),
+				secret(MRX, 194, 157),
+				x2(MRX, 104, SECRET, 86, BUS, 52),
+				x2(MRX, 65535, BUS, 0, BUS, 1))) {
+			long packed = PackedMove.encode(move);
+			assertThat(PackedMove.decode(packed)).isEqualTo(move);
+			assertThat(PackedMove.source(packed)).isEqualTo(move.source());
+			assertThat(PackedMove.toString(packed)).isEqualTo(move.toString());
+		}
+	}
+
+	@Test public void testDistinctMovesHaveDistinctEncodings() {
+		assertThat(PackedMove.encode(taxi(MRX, 1, 8)))
+				.isNotEqualTo(PackedMove.encode(secret(MRX, 1, 8)))
+				.isNotEqualTo(PackedMove.encode(taxi(RED, 1, 8)))
+				.isNotEqualTo(PackedMove.encode(x2(MRX, 1, TAXI, 8, TAXI, 8)));
+	}
+
+	@Test public void testNodeOutOfRangeShouldThrow() {
+		assertThatThrownBy(() -> PackedMove.encode(taxi(MRX, 1, 65536)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testGenerateMatchesAvailableMovesThroughoutGame() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer(), bluePlayer(), whitePlayer(), yellowPlayer());
+		Random random = new Random(42);
+		MoveList list = new MoveList(4);
+		// a few rounds in, both MrX and detective turns
+		for (int ply = 0; ply < 30 && state.getWinner().isEmpty(); ply++) {
+			list.clear();
+			int count = PackedMove.generate(state, list);
+			assertThat(count).isEqualTo(list.size());
+			assertThat(list.toMoves()).containsExactlyInAnyOrderElementsOf(state.getAvailableMoves());
+			state = state.advance(PackedMove.decode(list.get(random.nextInt(list.size()))));
+		}
+	}
+
+	@Test public void testGenerateNothingWhenGameOver() {
+		// MrX is surrounded and cannot move
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, makeTickets(1, 0, 0, 0, 0), 103),
+				new Player(RED, makeTickets(1, 0, 0, 0, 0), 102),
+				new Player(BLUE, makeTickets(1, 0, 0, 0, 0), 85),
+				new Player(GREEN, makeTickets(1, 0, 0, 0, 0), 86));
+		assertGameIsOver(state);
+		MoveList list = new MoveList();
+		assertThat(PackedMove.generate(state, list)).isZero();
+		assertThat(list.isEmpty()).isTrue();
+	}
+}
@@ -0,0 +1,64 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+
+/**
+ * Tests the packed ticket counts of {@link Player}
+ */
+public class PlayerTest {
+
+	@Test public void testCountsMatchSuppliedMap() {
+		Player player = new Player(MRX, ImmutableMap.of(TAXI, 4, BUS, 0, SECRET, 5), 1);
+		assertThat(player.count(TAXI)).isEqualTo(4);
+		assertThat(player.count(BUS)).isZero();
+		assertThat(player.count(DOUBLE)).isZero();
+		assertThat(player.has(SECRET)).isTrue();
+		assertThat(player.has(BUS)).isFalse();
+		assertThat(player.hasAtLeast(SECRET, 5)).isTrue();
+		assertThat(player.hasAtLeast(SECRET, 6)).isFalse();
+	}
+
+	@Test public void testUseAndGiveKeepMapKeys() {
+		Player player = new Player(RED, ImmutableMap.of(TAXI, 1, BUS, 0), 1);
+		Player used = player.use(TAXI).give(BUS).give(UNDERGROUND);
+		assertThat(used.tickets()).isEqualTo(ImmutableMap.of(TAXI, 0, BUS, 1));
+		assertThat(player.tickets()).isEqualTo(ImmutableMap.of(TAXI, 1, BUS, 0));
+		assertThatThrownBy(() -> used.use(TAXI))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testEqualsAndHashCodeMatchMapBasedDefinition() {
+		ImmutableMap<ScotlandYard.Ticket, Integer> tickets = ImmutableMap.of(TAXI, 3, SECRET, 2);
+		Player player = new Player(MRX, tickets, 45);
+		Player rebuilt = new Player(MRX, ImmutableMap.of(TAXI, 4, SECRET, 2), 45).use(TAXI);
+		assertThat(rebuilt).isEqualTo(player);
+		assertThat(player.hashCode()).isEqualTo(Objects.hash(MRX, tickets, 45));
+		assertThat(rebuilt.hashCode()).isEqualTo(player.hashCode());
+		assertThat(player.at(46)).isNotEqualTo(player);
+		assertThat(new Player(MRX, ImmutableMap.of(TAXI, 3), 45)).isNotEqualTo(
+				new Player(MRX, ImmutableMap.of(TAXI, 3, SECRET, 0), 45));
+	}
+
+	@Test public void testCountsOutOfRangeThrow() {
+		assertThatThrownBy(() -> new Player(MRX, ImmutableMap.of(TAXI, -1), 1))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new Player(MRX, ImmutableMap.of(TAXI, Player.MAX_TICKETS + 1), 1))
+				.isInstanceOf(IllegalArgumentException.class);
+		Player full = new Player(MRX, ImmutableMap.of(TAXI, Player.MAX_TICKETS), 1);
+		assertThatThrownBy(() -> full.give(TAXI)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,103 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the bit-matrix reachability against walks over the Guava graph
+ */
+public class ReachabilityEngineTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> GRAPH;
+	private static ReachabilityEngine ENGINE;
+
+	@BeforeClass public static void setUp() {
+		ParameterisedModelTestBase.setUp();
+		GRAPH = ParameterisedModelTestBase.standardGraph();
+		ENGINE = ReachabilityEngine.of(CompiledGraph.of(GRAPH));
+	}
+
+	// every walk of exactly steps moves that the tickets pay for and that avoids blocked
+	private static void walk(int node, int steps, int[] tickets, Set<Integer> blocked,
+	                         Set<Integer> out) {
+		if (steps == 0) {
+			out.add(node);
+			return;
+		}
+		for (int next : GRAPH.adjacentNodes(node)) {
+			if (blocked.contains(next)) continue;
+			Set<Ticket> payable = new HashSet<>();
+			for (Transport t : GRAPH.edgeValue(node, next).orElseThrow())
+				payable.add(t.requiredTicket());
+			payable.add(Ticket.SECRET);
+			for (Ticket ticket : payable) {
+				if (tickets[ticket.ordinal()] == 0) continue;
+				tickets[ticket.ordinal()]--;
+				walk(next, steps - 1, tickets, blocked, out);
+				tickets[ticket.ordinal()]++;
+			}
+		}
+	}
+
+	@Test public void testEngineBuiltOncePerGraph() {
+		assertThat(ReachabilityEngine.of(CompiledGraph.of(GRAPH))).isSameAs(ENGINE);
+	}
+
+	@Test public void testAdjacencyMatchesGraph() {
+		CompiledGraph graph = ENGINE.graph();
+		for (int from : GRAPH.nodes())
+			for (int to : GRAPH.nodes())
+				for (Transport t : Transport.values())
+					assertThat(ENGINE.adjacent(t, graph.index(from), graph.index(to)))
+							.isEqualTo(GRAPH.edgeValueOrDefault(from, to, ImmutableSet.of())
+									.contains(t));
+	}
+
+	@Test public void testExpandMasksBlockedNodes() {
+		long[] out = new long[ENGINE.graph().words()];
+		ENGINE.expand(ENGINE.bitsOf(ImmutableSet.of(1)), CompiledGraph.mask(Ticket.TAXI), null, out);
+		assertThat(ENGINE.idsOf(out)).containsExactlyInAnyOrder(8, 9);
+		ENGINE.expand(ENGINE.bitsOf(ImmutableSet.of(1, 194)), CompiledGraph.mask(Ticket.SECRET),
+				ENGINE.bitsOf(ImmutableSet.of(8, 46)), out);
+		assertThat(ENGINE.idsOf(out)).contains(9, 58, 157).doesNotContain(8, 46, 1);
+		ENGINE.expand(ENGINE.bitsOf(ImmutableSet.of(1)), 0, null, out);
+		assertThat(ENGINE.idsOf(out)).isEmpty();
+	}
+
+	@Test public void testReachableMatchesWalksWithinBudget() {
+		int[][] budgets = {
+				{4, 3, 3, 2, 5},
+				{1, 1, 0, 0, 0},
+				{2, 0, 1, 0, 1},
+				{0, 0, 0, 0, 0},
+		};
+		Set<Integer> blocked = ImmutableSet.of(13, 46, 67, 89);
+		for (int source : new int[]{1, 13, 67, 194}) {
+			for (int[] budget : budgets) {
+				for (int steps = 0; steps <= 3; steps++) {
+					Set<Integer> expected = new HashSet<>();
+					walk(source, steps, budget.clone(), blocked, expected);
+					long[] actual = ENGINE.reachable(ENGINE.bitsOf(ImmutableSet.of(source)), steps,
+							budget, ENGINE.bitsOf(blocked));
+					assertThat(ENGINE.idsOf(actual)).containsExactlyInAnyOrderElementsOf(expected);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownNodeThrows() {
+		ENGINE.bitsOf(ImmutableSet.of(0));
+	}
+}
@@ -0,0 +1,157 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.blackPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.bluePlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.makeTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.redPlayer;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.standard24MoveSetup;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.MRX_LOCATIONS;
+
+/**
+ * Tests Zobrist keys of the search state and the shared transposition table
+ */
+public class TranspositionTableTest {
+
+	@BeforeClass public static void setUp() { ParameterisedModelTestBase.setUp(); }
+
+	private static MutableSearchState newSearch() {
+		GameState state = new BitboardGameStateFactory().build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), bluePlayer());
+		return MutableSearchState.of(state);
+	}
+
+	@Test public void testIncrementalKeyMatchesRecomputedKey() {
+		Random random = new Random(3);
+		MutableSearchState search = newSearch();
+		long start = search.key();
+		MoveList moves = new MoveList();
+		while (!search.isGameOver()) {
+			moves.clear();
+			search.generate(moves);
+			search.make(moves.get(random.nextInt(moves.size())));
+			assertThat(search.key()).isEqualTo(search.recomputeKey());
+		}
+		while (search.ply() > 0) search.unmake();
+		assertThat(search.key()).isEqualTo(start);
+	}
+
+	@Test public void testTranspositionsShareKey() {
+		// detectives move in either order after the same MrX move
+		MutableSearchState a = newSearch();
+		MoveList moves = new MoveList();
+		a.generate(moves);
+		a.make(moves.get(0));
+		MutableSearchState b = a.copy();
+		moves.clear();
+		a.generate(moves);
+		long red = -1, blue = -1;
+		for (int i = 0; i < moves.size(); i++) {
+			if (PackedMove.piece(moves.get(i)) == 1 && red == -1) red = moves.get(i);
+			if (PackedMove.piece(moves.get(i)) == 3 && blue == -1) blue = moves.get(i);
+		}
+		a.make(red);
+		a.make(blue);
+		b.make(blue);
+		b.make(red);
+		assertThat(a.key()).isEqualTo(b.key());
+		a.unmake();
+		assertThat(a.key()).isNotEqualTo(b.key());
+	}
+
+	@Test public void testKeysTicketCountsAndRoundsPastTables() {
+		Zobrist zobrist = Zobrist.of(CompiledGraph.of(standard24MoveSetup()));
+		Set<Long> keys = new HashSet<>();
+		for (int count = 0; count < 4 * Zobrist.COUNTS; count++)
+			keys.add(zobrist.tickets(0, 0, count));
+		for (int round = 0; round < 4 * Zobrist.ROUNDS; round++) keys.add(zobrist.round(round));
+		assertThat(keys).hasSize(4 * (Zobrist.COUNTS + Zobrist.ROUNDS));
+	}
+
+	@Test public void testSearchesGamesWithManyTickets() {
+		// every taxi ticket may end up with MrX
+		GameState state = new BitboardGameStateFactory().build(standard24MoveSetup(),
+				new Player(MRX, makeTickets(2 * Zobrist.COUNTS, 3, 3, 2, 5), MRX_LOCATIONS.get(0)),
+				redPlayer());
+		MutableSearchState search = MutableSearchState.of(state);
+		assertThat(search.key()).isEqualTo(search.recomputeKey());
+		MoveList moves = new MoveList();
+		search.generate(moves);
+		search.make(moves.get(0));
+		assertThat(search.key()).isEqualTo(search.recomputeKey());
+	}
+
+	@Test public void testStoreAndProbe() {
+		TranspositionTable table = new TranspositionTable(1000);
+		assertThat(table.capacity()).isEqualTo(1024);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		assertThat(table.probe(42, entry)).isFalse();
+		table.store(42, 7, -5, 3, TranspositionTable.LOWER);
+		assertThat(table.probe(42, entry)).isTrue();
+		assertThat(entry.move).isEqualTo(7);
+		assertThat(entry.score).isEqualTo(-5);
+		assertThat(entry.depth).isEqualTo(3);
+		assertThat(entry.bound).isEqualTo(TranspositionTable.LOWER);
+		table.clear();
+		assertThat(table.probe(42, entry)).isFalse();
+	}
+
+	@Test public void testDeeperEntryKeptUntilNewSearch() {
+		TranspositionTable table = new TranspositionTable(16);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		table.store(1, 0, 10, 8, TranspositionTable.EXACT);
+		// same slot, different key, shallower
+		table.store(17, 0, 20, 2, TranspositionTable.EXACT);
+		assertThat(table.probe(1, entry)).isTrue();
+		assertThat(table.probe(17, entry)).isFalse();
+		table.newSearch();
+		table.store(17, 0, 20, 2, TranspositionTable.EXACT);
+		assertThat(table.probe(17, entry)).isTrue();
+		assertThat(table.probe(1, entry)).isFalse();
+	}
+
+	@Test public void testOldEntryReplacedAfterGenerationWraps() {
+		TranspositionTable table = new TranspositionTable(16);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		table.store(1, 0, 10, 8, TranspositionTable.EXACT);
+		for (int search = 0; search < 256; search++) table.newSearch();
+		table.store(17, 0, 20, 2, TranspositionTable.EXACT);
+		assertThat(table.probe(17, entry)).isTrue();
+		assertThat(table.probe(1, entry)).isFalse();
+	}
+
+	@Test public void testSharedBetweenThreads() throws Exception {
+		TranspositionTable table = new TranspositionTable(1 << 16, 16);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				long offset = t;
+				futures.add(executor.submit(() -> {
+					TranspositionTable.Entry entry = new TranspositionTable.Entry();
+					for (long key = offset; key < 1 << 16; key += 4) {
+						table.store(key, key, (int) key, 1, TranspositionTable.EXACT);
+						assertThat(table.probe(key, entry)).isTrue();
+						assertThat(entry.move).isEqualTo(key);
+					}
+				}));
+			}
+			for (Future<?> future : futures) future.get();
+		} finally { executor.shutdown(); }
+	}
+}
@@ -0,0 +1,90 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+
+/**
+ * Tests the persistent travel log
+ */
+public class TravelLogTest {
+
+	@Test public void testAppendLeavesOriginalUnchanged() {
+		TravelLog empty = TravelLog.empty();
+		TravelLog one = empty.append(LogEntry.hidden(TAXI));
+		TravelLog two = one.append(LogEntry.reveal(BUS, 42));
+		assertThat(empty).isEmpty();
+		assertThat(one).containsExactly(LogEntry.hidden(TAXI));
+		assertThat(two).containsExactly(LogEntry.hidden(TAXI), LogEntry.reveal(BUS, 42));
+	}
+
+	@Test public void testSiblingsDoNotSeeEachOther() {
+		TravelLog base = TravelLog.of(ImmutableList.of(LogEntry.hidden(TAXI)));
+		TravelLog left = base.append(LogEntry.hidden(BUS));
+		TravelLog right = base.append(LogEntry.hidden(SECRET));
+		TravelLog leftLonger = left.append(LogEntry.reveal(TAXI, 1));
+		assertThat(left).containsExactly(LogEntry.hidden(TAXI), LogEntry.hidden(BUS));
+		assertThat(right).containsExactly(LogEntry.hidden(TAXI), LogEntry.hidden(SECRET));
+		assertThat(leftLonger).containsExactly(
+				LogEntry.hidden(TAXI), LogEntry.hidden(BUS), LogEntry.reveal(TAXI, 1));
+	}
+
+	@Test public void testGrowsPastInitialCapacity() {
+		TravelLog log = TravelLog.empty();
+		List<LogEntry> expected = new ArrayList<>();
+		for (int i = 1; i <= 30; i++) {
+			log = log.append(LogEntry.reveal(TAXI, i));
+			expected.add(LogEntry.reveal(TAXI, i));
+		}
+		assertThat(log).containsExactlyElementsOf(expected);
+	}
+
+	@Test public void testImmutableListViewIsEqualAndCached() {
+		TravelLog log = TravelLog.empty().append(LogEntry.hidden(TAXI));
+		assertThat(log.asImmutableList()).isEqualTo(ImmutableList.of(LogEntry.hidden(TAXI)));
+		assertThat(log.asImmutableList()).isSameAs(log.asImmutableList());
+		assertThat(log).isEqualTo(log.asImmutableList());
+		assertThat(log.hashCode()).isEqualTo(log.asImmutableList().hashCode());
+	}
+
+	@Test public void testIsReadOnly() {
+		TravelLog log = TravelLog.empty().append(LogEntry.hidden(TAXI));
+		assertThatThrownBy(() -> log.add(LogEntry.hidden(BUS)))
+				.isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> log.get(1)).isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void testEntriesAreShared() {
+		assertThat(LogEntry.hidden(TAXI)).isSameAs(LogEntry.hidden(TAXI));
+		assertThat(LogEntry.reveal(BUS, 42)).isSameAs(LogEntry.reveal(BUS, 42));
+		assertThat(LogEntry.reveal(BUS, 42)).isNotEqualTo(LogEntry.reveal(SECRET, 42));
+		assertThat(LogEntry.reveal(BUS, 1000)).isEqualTo(LogEntry.reveal(BUS, 1000));
+	}
+
+	@Test public void testConcurrentSiblingAppends() throws Exception {
+		TravelLog base = TravelLog.of(ImmutableList.of(LogEntry.hidden(TAXI)));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<TravelLog>> futures = new ArrayList<>();
+			for (int t = 0; t < 16; t++) {
+				int location = t + 1;
+				futures.add(executor.submit(() -> base.append(LogEntry.reveal(BUS, location))));
+			}
+			for (int t = 0; t < 16; t++)
+				assertThat(futures.get(t).get()).containsExactly(
+						LogEntry.hidden(TAXI), LogEntry.reveal(BUS, t + 1));
+		} finally { executor.shutdown(); }
+	}
+}